@@ -0,0 +1,158 @@
+import argparse
+import os
+import random
+import socket
+import struct
+import tempfile
+import threading
+import time
+from collections import Counter
+from urllib.parse import quote
+
+# Lastgenerator für den Daemon auf Port 5555 und misst die Latenz jeder Anfrage. Spricht entweder dasselbe
+# Protokoll wie helper-client.py (Argumente mit NUL getrennt, Antwort ist ein Byte Exit-Code) oder das
+# gerahmte Protokoll (siehe FramedConnection.java) mit offenen Verbindungen und mehreren Anfragen gleichzeitig.
+
+parser = argparse.ArgumentParser(description='Load test for the mirror daemon')
+parser.add_argument('--host', default='127.0.0.1')
+parser.add_argument('--port', type=int, default=5555)
+parser.add_argument('--concurrency', type=int, default=32)
+parser.add_argument('--duration', type=float, default=30, help='seconds')
+parser.add_argument('--api-url', default='http://127.0.0.1:8080/api2', help='base url for doRequest article links')
+parser.add_argument('--articles', type=int, default=50, help='number of distinct articles requested')
+parser.add_argument('--mix', default='getHomepage:3,doRequest:10,getTopic:2,getRegional:2,getSearch:1',
+                    help='weighted action mix')
+parser.add_argument('--protocol', choices=['legacy', 'framed'], default='legacy')
+parser.add_argument('--pipeline', type=int, default=1, help='requests in flight per connection (framed only)')
+args = parser.parse_args()
+
+TOPICS = ['inland', 'ausland', 'wirtschaft', 'sport', 'video']
+SEARCH_TERMS = ['Klima', 'Bundestag', 'Wahl', 'Energie', 'Bahn']
+
+actions = []
+weights = []
+for entry in args.mix.split(','):
+    name, weight = entry.split(':')
+    actions.append(name)
+    weights.append(float(weight))
+
+def random_query(action):
+    if action == 'doRequest':
+        return '%s/inland/article-%03d.json' % (args.api_url, random.randrange(args.articles))
+    elif action == 'getTopic':
+        return random.choice(TOPICS)
+    elif action == 'getRegional':
+        return str(random.randint(1, 16))
+    elif action == 'getSearch':
+        return '%s&page=%d' % (random.choice(SEARCH_TERMS), random.randint(0, 3))
+    return None
+
+HANDSHAKE = b'\xffTM\x01'
+
+def encode_args(action, query, outfile=None):
+    request_args = ['helper-client.py', "action='%s'" % action]
+    if outfile is not None:
+        request_args.append("unique_file_path='%s'" % outfile)
+    if query is not None:
+        request_args.append("query='%s'" % quote(query, safe=''))
+
+    payload = bytearray()
+    for arg in request_args:
+        payload.extend(bytes(arg, 'utf-8'))
+        payload.append(0)
+    return payload
+
+def send_request(action, query, outfile):
+    payload = encode_args(action, query, outfile)
+    with socket.create_connection((args.host, args.port)) as client:
+        client.sendall(payload)
+        exit_code = client.recv(1)
+    return exit_code[0] if exit_code else -1
+
+lock = threading.Lock()
+latencies = []
+exit_codes = Counter()
+per_action = {}
+deadline = time.monotonic() + args.duration
+outdir = tempfile.mkdtemp(prefix='mirror-load-')
+
+def record(action, code, elapsed):
+    with lock:
+        latencies.append(elapsed)
+        exit_codes[code] += 1
+        per_action.setdefault(action, []).append(elapsed)
+
+def recv_exactly(client, size):
+    data = bytearray()
+    while len(data) < size:
+        chunk = client.recv(size - len(data))
+        if not chunk:
+            raise ConnectionError('connection closed')
+        data.extend(chunk)
+    return bytes(data)
+
+def framed_worker(worker_id):
+    while time.monotonic() < deadline:
+        try:
+            with socket.create_connection((args.host, args.port)) as client:
+                client.sendall(HANDSHAKE)
+                reply = recv_exactly(client, 1)
+                if reply != HANDSHAKE[:1]: # Überlastet, der Server schickt nur den Exit-Code
+                    record('handshake', reply[0], 0)
+                    continue
+                if recv_exactly(client, len(HANDSHAKE) - 1) != HANDSHAKE[1:]:
+                    raise ConnectionError('unexpected handshake')
+                run_framed_connection(client)
+        except OSError:
+            record('connection', 'connection-error', 0)
+
+def run_framed_connection(client):
+    in_flight = {}
+    next_id = 0
+    while True:
+        while len(in_flight) < args.pipeline and time.monotonic() < deadline:
+            action = random.choices(actions, weights)[0]
+            payload = encode_args(action, random_query(action))
+            client.sendall(struct.pack('>II', 4 + len(payload), next_id) + payload)
+            in_flight[next_id] = (action, time.monotonic())
+            next_id += 1
+        if not in_flight:
+            return
+
+        length, request_id = struct.unpack('>II', recv_exactly(client, 8))
+        code = recv_exactly(client, length - 4)[0]
+        action, start = in_flight.pop(request_id)
+        record(action, code, (time.monotonic() - start) * 1000)
+
+def worker(worker_id):
+    outfile = os.path.join(outdir, 'worker-%d.gmi' % worker_id)
+    while time.monotonic() < deadline:
+        action = random.choices(actions, weights)[0]
+        start = time.monotonic()
+        try:
+            code = send_request(action, random_query(action), outfile)
+        except OSError:
+            code = 'connection-error'
+        record(action, code, (time.monotonic() - start) * 1000)
+
+def percentile(values, p):
+    if not values:
+        return 0
+    values = sorted(values)
+    index = min(len(values) - 1, int(round(p / 100 * (len(values) - 1))))
+    return values[index]
+
+target = framed_worker if args.protocol == 'framed' else worker
+threads = [threading.Thread(target=target, args=(i,)) for i in range(args.concurrency)]
+started = time.monotonic()
+for thread in threads:
+    thread.start()
+for thread in threads:
+    thread.join()
+elapsed = time.monotonic() - started
+
+print('requests:   %d in %.1f s (%.1f req/s, concurrency %d, %s)' % (len(latencies), elapsed, len(latencies) / elapsed, args.concurrency, args.protocol))
+print('latency:    p50 %.1f ms, p99 %.1f ms, max %.1f ms' % (percentile(latencies, 50), percentile(latencies, 99), max(latencies, default=0)))
+print('exit codes: ' + ', '.join('%s=%d' % (code, count) for code, count in sorted(exit_codes.items(), key=str)))
+for action, values in sorted(per_action.items()):
+    print('  %-12s n=%-6d p50 %.1f ms, p99 %.1f ms' % (action, len(values), percentile(values, 50), percentile(values, 99)))
\ No newline at end of file
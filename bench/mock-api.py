@@ -0,0 +1,85 @@
+import argparse
+import email.utils
+import hashlib
+import os
+import random
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from urllib.parse import urlparse
+
+# Lokaler Ersatz für https://www.tagesschau.de/api2, liefert die Fixtures aus bench/fixtures aus.
+# Der Daemon wird mit "api_url": "http://127.0.0.1:8080/api2" in mirror_settings.json darauf umgeleitet.
+
+REAL_API_URL = 'https://www.tagesschau.de/api2'
+
+parser = argparse.ArgumentParser(description='Mock tagesschau api')
+parser.add_argument('--port', type=int, default=8080)
+parser.add_argument('--fixtures', default=os.path.join(os.path.dirname(os.path.abspath(__file__)), 'fixtures'))
+parser.add_argument('--latency', type=float, default=50, help='base latency in ms')
+parser.add_argument('--jitter', type=float, default=20, help='random extra latency in ms (0 to jitter)')
+parser.add_argument('--error-rate', type=float, default=0.0, help='fraction of requests answered with --error-status')
+parser.add_argument('--error-status', type=int, default=503)
+parser.add_argument('--max-age', type=int, default=60, help='Cache-Control max-age sent with every response')
+parser.add_argument('--no-validators', action='store_true', help='send no ETag/Last-Modified, so conditional requests never match')
+args = parser.parse_args()
+
+base_url = 'http://127.0.0.1:%d/api2' % args.port
+fixtures = {}
+etags = {}
+for name in ['homepage', 'news', 'search', 'article']:
+    with open(os.path.join(args.fixtures, name + '.json'), 'r', encoding='utf-8') as f:
+        # Links in den Fixtures zeigen auf den Mock statt auf tagesschau.de
+        fixtures[name] = f.read().replace(REAL_API_URL, base_url).encode('utf-8')
+        etags[fixtures[name]] = '"%s"' % hashlib.sha1(fixtures[name]).hexdigest()[:16]
+last_modified = email.utils.formatdate(time.time(), usegmt=True) # Die Fixtures ändern sich nicht, solange der Mock läuft
+
+def fixture_for(path):
+    if path.startswith('/api2/homepage'):
+        return fixtures['homepage']
+    elif path.startswith('/api2/news'):
+        return fixtures['news']
+    elif path.startswith('/api2/search'):
+        return fixtures['search']
+    elif path.startswith('/api2/') and path.endswith('.json'):
+        return fixtures['article']
+    return None
+
+class MockApiHandler(BaseHTTPRequestHandler):
+    protocol_version = 'HTTP/1.1'
+
+    def do_GET(self):
+        time.sleep((args.latency + random.uniform(0, args.jitter)) / 1000)
+
+        body = fixture_for(urlparse(self.path).path)
+        if body is None:
+            self.send_error(404)
+            return
+        if random.random() < args.error_rate:
+            self.send_error(args.error_status)
+            return
+
+        etag = etags[body]
+        if not args.no_validators and (self.headers.get('If-None-Match') == etag or self.headers.get('If-Modified-Since') == last_modified):
+            self.send_response(304)
+            self.send_validators(etag)
+            self.end_headers()
+            return
+
+        self.send_response(200)
+        self.send_header('Content-Type', 'application/json; charset=utf-8')
+        self.send_header('Content-Length', str(len(body)))
+        self.send_validators(etag)
+        self.end_headers()
+        self.wfile.write(body)
+
+    def send_validators(self, etag):
+        self.send_header('Cache-Control', 'max-age=%d' % args.max_age)
+        if not args.no_validators:
+            self.send_header('ETag', etag)
+            self.send_header('Last-Modified', last_modified)
+
+    def log_message(self, format, *log_args):
+        pass
+
+print('Serving mock api on %s' % base_url)
+ThreadingHTTPServer(('127.0.0.1', args.port), MockApiHandler).serve_forever()
\ No newline at end of file
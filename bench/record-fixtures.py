@@ -0,0 +1,39 @@
+import argparse
+import json
+import os
+import urllib.parse
+import urllib.request
+
+# Zeichnet die Fixtures in bench/fixtures mit echten Antworten der Api auf, mit denselben Anfragen wie der Daemon:
+# Startseite, Ressort "inland", Suche nach "Klima" und der erste Artikel der Startseite (kein Video).
+# Die Antworten werden unverändert gespeichert, damit Benchmarks und Mock mit echten Texten (Tags, Entitäten, Umlaute) laufen.
+
+parser = argparse.ArgumentParser(description='Record api responses into bench/fixtures')
+parser.add_argument('--api-url', default='https://www.tagesschau.de/api2')
+parser.add_argument('--fixtures', default=os.path.join(os.path.dirname(os.path.abspath(__file__)), 'fixtures'))
+parser.add_argument('--search', default='Klima')
+parser.add_argument('--search-page-size', type=int, default=15) # Wie SEARCH_PAGE_SIZE in RequestHandler
+args = parser.parse_args()
+
+def fetch(url):
+    request = urllib.request.Request(url, headers={'Accept': 'application/json'})
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return response.read()
+
+def record(name, url):
+    body = fetch(url)
+    json.loads(body) # Nur gültige Antworten übernehmen
+    with open(os.path.join(args.fixtures, name + '.json'), 'wb') as f:
+        f.write(body)
+    print('%-8s %7d bytes  %s' % (name, len(body), url))
+    return body
+
+homepage = json.loads(record('homepage', args.api_url + '/homepage/'))
+record('news', args.api_url + '/news/?ressort=inland')
+record('search', '%s/search/?searchText=%s&resultPage=1&pageSize=%d&type=story'
+       % (args.api_url, urllib.parse.quote(args.search), args.search_page_size))
+
+articles = [teaser['details'] for teaser in homepage['news'] if teaser.get('type') != 'video' and 'details' in teaser]
+if not articles:
+    raise SystemExit('No article on the homepage')
+record('article', articles[0])
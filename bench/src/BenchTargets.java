@@ -0,0 +1,309 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+import benchmarks.Targets;
+
+// Verbindet die Benchmarks (Paket "benchmarks") mit den Klassen des Programms im Standardpaket
+public class BenchTargets implements Targets {
+    private final FixtureRequestHandler rq = new FixtureRequestHandler();
+    private final PageGenorator pg = new PageGenorator(rq);
+
+    public String generateHomepage() throws Exception {
+        return pg.generateHomepage();
+    }
+
+    public String generateTopicHomepage() throws Exception {
+        return pg.generateTopicHomepage("inland");
+    }
+
+    public String generateRegionalHomepage() throws Exception {
+        return pg.generateRegionalHomepage(2);
+    }
+
+    public String generateSearchPage() throws Exception {
+        return pg.generateSearchPage("Klima", 1);
+    }
+
+    public String generateNewsPage() throws Exception {
+        return pg.generateNewsPage("https://www.tagesschau.de/api2/inland/fixture.json");
+    }
+
+    public String generateWithConcat(String page) throws Exception {
+        return ConcatRenderer.render(page, rq);
+    }
+
+    public void clearTeaserCache() {
+        PageGenorator.teaserCache.clear();
+    }
+
+    public String[] articleParagraphs() throws Exception {
+        ArrayList<String> paragraphs = new ArrayList<String>();
+        for(Paragraph paragraph : FixtureRequestHandler.load("article", Article.READER).content) {
+            if(paragraph.type != Paragraph.Type.HTML_EMBED) {
+                paragraphs.add(paragraph.value);
+            }
+        }
+        return paragraphs.toArray(new String[paragraphs.size()]);
+    }
+
+    public int writeParagraphs(String[] paragraphs) {
+        GemtextWriter page = new GemtextWriter(paragraphs.length * 400);
+        for(String paragraph : paragraphs) {
+            page.htmlLine("", paragraph);
+        }
+        return page.length();
+    }
+
+    public String[] parseDate(String isoDate) {
+        ApiDate date = ApiDate.parse(isoDate);
+        return new String[] { date.formatDate(), date.formatTime() };
+    }
+
+    public void openCache() {
+        CacheHandler.initialize();
+    }
+
+    public void cacheArticle(String key, String contents) {
+        CacheHandler.cacheArticle(key, contents);
+    }
+
+    public String retrieveCachedArticle(String key) {
+        return CacheHandler.retrieveCachedArticle(key);
+    }
+
+    public byte[] compressPage(String contents, int level) {
+        return PageCodec.compress(contents.getBytes(StandardCharsets.UTF_8), level);
+    }
+
+    public String decompressPage(byte[] compressed, int rawLength) throws Exception {
+        return PageCodec.decompress(compressed, rawLength);
+    }
+
+    public String[] stringArrayFromCEncoding(byte[] buffer, int size) {
+        return ServerThread.stringArrayFromCEncoding(buffer, size);
+    }
+
+    public Object parseModel(String fixture) throws Exception {
+        byte[] body = FixtureRequestHandler.readFixture(fixture);
+        return RequestHandler.parseBody(new ByteArrayInputStream(body), FixtureRequestHandler.readerFor(fixture));
+    }
+
+    public Object parseDocument(String fixture) throws Exception {
+        byte[] body = FixtureRequestHandler.readFixture(fixture);
+        return new JSONObject(new String(body, StandardCharsets.UTF_8));
+    }
+}
+
+// Liefert die Api-Antworten aus bench/fixtures (siehe bench/record-fixtures.py) statt Anfragen an tagesschau.de zu senden
+class FixtureRequestHandler extends RequestHandler {
+    private final NewsOverview homepage = load("homepage", NewsOverview.HOMEPAGE);
+    private final NewsOverview news = load("news", NewsOverview.NEWS);
+    private final SearchResult search = load("search", SearchResult.READER);
+    private final Article article = load("article", Article.READER);
+
+    @Override
+    public SearchResult getSearchResults(String query, int page) {
+        return search;
+    }
+
+    @Override
+    public NewsOverview getNews(Region[] regions, Topic topic) {
+        return news;
+    }
+
+    @Override
+    public NewsOverview getHompage() {
+        return homepage;
+    }
+
+    @Override
+    public Article executePreformedRequest(String verifiedSafeUrl) {
+        return article;
+    }
+
+    static <T> T load(String fixture, ModelReader<T> reader) {
+        try {
+            return RequestHandler.parseBody(new ByteArrayInputStream(readFixture(fixture)), reader);
+        }
+        catch(IOException | MissingJsonValueException e) {
+            throw new IllegalStateException("Could not load fixture " + fixture, e);
+        }
+    }
+
+    static byte[] readFixture(String fixture) throws IOException {
+        return Files.readAllBytes(Paths.get(Targets.fixtureDir(), fixture + ".json"));
+    }
+
+    static ModelReader<?> readerFor(String fixture) {
+        switch(fixture) {
+            case "homepage": return NewsOverview.HOMEPAGE;
+            case "news": return NewsOverview.NEWS;
+            case "search": return SearchResult.READER;
+            default: return Article.READER;
+        }
+    }
+}
+
+// Die Seiten so gerendert, wie PageGenorator es vor GemtextWriter tat: page += ... und String.format pro Zeile,
+// Zwischenstrings für die Listen und die Infozeile des Artikels per replace(). Liest aus denselben Modellen und
+// ergibt dieselben Seiten, damit RenderComparisonBenchmark nur die Art des Zusammenbauens vergleicht.
+class ConcatRenderer {
+    private static final String GEMINI_DOMAIN = "gemini://127.0.0.1";
+
+    static String render(String page, RequestHandler rq) throws AppException {
+        switch(page) {
+            case "homepage": return homepage(rq.getHompage());
+            case "topic": return topicHomepage("inland", rq.getNews(new Region[] {}, Topic.fromValidName("inland")));
+            case "regional": return regionalHomepage(2, rq.getNews(new Region[] { Region.uncheckedFromId(2) }, null));
+            case "search": return searchPage("Klima", 1, rq.getSearchResults("Klima", 1), rq.getSearchPageSize());
+            default: return newsPage(rq.executePreformedRequest("https://www.tagesschau.de/api2/inland/fixture.json"));
+        }
+    }
+
+    private static String homepage(NewsOverview overview) {
+        String homepage = "# Tagesschau\n\n";
+        homepage += articleList("Aktuelle Nachrichten - " + currentDate(), overview.news);
+        homepage += regionalArticleList("Regional", overview.regional);
+
+        homepage += "## Ressort\n";
+        homepage += "=>" + GEMINI_DOMAIN + "/topic?inland Inland\n";
+        homepage += "=>" + GEMINI_DOMAIN + "/topic?ausland Ausland\n";
+        homepage += "=>" + GEMINI_DOMAIN + "/topic?wirtschaft Wirtschaft\n";
+        homepage += "=>" + GEMINI_DOMAIN + "/topic?sport Sport\n";
+        homepage += "=>" + GEMINI_DOMAIN + "/topic?video Video\n";
+
+        homepage += "## Suche\n=>" + GEMINI_DOMAIN + "/search Nach Artikel suchen\n";
+        return homepage;
+    }
+
+    private static String regionalHomepage(int regionId, NewsOverview regionalNews) {
+        String regionalHomepage = "# Tagesschau - " + Region.uncheckedNameFromId(regionId) + "\n\n";
+        regionalHomepage += articleList("Aktuelle Nachrichten - " + currentDate(), regionalNews.news);
+        return regionalHomepage;
+    }
+
+    private static String topicHomepage(String validTopicName, NewsOverview news) {
+        String topicName = (char)(validTopicName.charAt(0) - 32) + validTopicName.substring(1);
+        String topicHomepage = "# Tagesschau - " + topicName + "\n\n";
+        topicHomepage += articleList("Aktuelle Nachrichten - " + currentDate(), news.news);
+        return topicHomepage;
+    }
+
+    private static String searchPage(String query, int pageNumber, SearchResult searchResult, int pageSize) {
+        String page = "# Suchergebnisse für '" + query + "'\n\n";
+        if(searchResult.results.isEmpty()) {
+            page += "Leider keine Suchergebnisse für '" + query + "' gefunden\n";
+            page += String.format("=>%s/search Neue Suche\n", GEMINI_DOMAIN);
+        }
+
+        int i = 1;
+        for(Teaser result : searchResult.results) {
+            String newLink = GEMINI_DOMAIN + "/do-request?" + result.details;
+            page += String.format("=>%s [%d] %s\n", newLink, i + pageNumber * pageSize, result.title);
+            if(result.firstSentence != null) {
+                page += String.format("%s - %s\n\n", result.date.formatDate(), result.firstSentence);
+            }
+            else {
+                page += result.date.formatDate() + "\n\n";
+            }
+            i++;
+        }
+
+        String urlEncodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
+        if(pageSize * (pageNumber + 1) < searchResult.totalItemCount) {
+            page += "\n=>" + String.format("%s/search?%s&page=%d", GEMINI_DOMAIN, urlEncodedQuery, pageNumber + 1) + " Nächste Seite";
+        }
+        if(pageNumber != 0) {
+            page += "\n=>" + String.format("%s/search?%s&page=%d", GEMINI_DOMAIN, urlEncodedQuery, pageNumber - 1) + " Vorherrige Seite";
+        }
+        return page;
+    }
+
+    private static String newsPage(Article article) {
+        String page = "#" + article.title + "\nTEXT_INFO_LINE_GOES_HERE\n\n";
+
+        String reporterLine = "";
+        for(Paragraph paragraph : article.content) {
+            if(paragraph.type == Paragraph.Type.TEXT) {
+                if(paragraph.isReporterLine()) {
+                    reporterLine = removeTags(paragraph.value, false) + " ";
+                }
+                else if(paragraph.value.startsWith("<strong>Über dieses Thema berichtete")) {
+                    page += "\n" + removeTags(paragraph.value, true) + "\n";
+                }
+                else {
+                    page += removeTags(paragraph.value, true) + "\n";
+                }
+            }
+            else if(paragraph.type == Paragraph.Type.HEADLINE) {
+                page += "###" + removeTags(paragraph.value, true) + "\n";
+            }
+            else {
+                page += "=>" + paragraph.value + " Externe Webseite\n";
+            }
+        }
+
+        String textInfoLine = String.format("%s%s %s", reporterLine, article.date.formatDate(), article.date.formatTime());
+        return page.replace("TEXT_INFO_LINE_GOES_HERE", textInfoLine);
+    }
+
+    private static String articleList(String title, List<Teaser> articleList) {
+        String page = "## " + title + "\n";
+        for(Teaser article : articleList) {
+            String date = article.date.formatDate();
+            String time = article.date.formatTime();
+            if(!article.isVideo()) {
+                page += String.format("=>%s %s\n", GEMINI_DOMAIN + "/do-request?" + article.details, article.title);
+                if(article.firstSentence != null) {
+                    page += String.format("%s - %s\n\n", time, article.firstSentence);
+                }
+                else {
+                    page += "\n";
+                }
+            }
+            else {
+                page += String.format("=>%s %s - %s %s\n\n", article.videoUrl, article.title.replace("tagesschau", "Tagesschau"), date, time);
+            }
+        }
+        return page;
+    }
+
+    private static String regionalArticleList(String title, List<Teaser> articleList) {
+        String page = "## " + title + "\n";
+        int regionId = 1;
+        for(Teaser article : articleList) {
+            if(regionId > 16) {
+                break;
+            }
+            page += String.format("### %s\n", Region.uncheckedNameFromId(regionId));
+            page += String.format("=>%s Aktuelle Nachrichten\n", GEMINI_DOMAIN + "/regional?" + regionId);
+            page += String.format("=>%s %s\n\n", GEMINI_DOMAIN + "/do-request?" + article.details, article.title);
+            regionId++;
+        }
+        return page;
+    }
+
+    private static String removeTags(String html, boolean withLinks) { // Wie früher ein eigener String pro Absatz
+        StringBuilder text = new StringBuilder(html.length());
+        boolean hasLinks = TagStripper.appendText(text, html, 0, html.length());
+        if(withLinks && hasLinks) {
+            text.append('\n');
+            TagStripper.appendLinks(text, html);
+            text.setLength(text.length() - 1); // Der Aufrufer hängt den letzten Zeilenumbruch an
+        }
+        return text.toString();
+    }
+
+    private static String currentDate() {
+        return LocalDateTime.now(ZoneId.of("GMT+02:00")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lesen und Schreiben eines gerenderten Artikels über CacheHandler (im Arbeitsverzeichnis unter "cache")
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+    private static final String KEY = "https://www.tagesschau.de/api2/bench/cached-article.json";
+    private static final String WRITE_KEY = "https://www.tagesschau.de/api2/bench/written-article.json";
+
+    private Targets targets;
+    private String page;
+
+    @Setup
+    public void setup() throws Exception {
+        targets = Targets.load();
+        page = targets.generateNewsPage();
+        targets.openCache();
+        targets.cacheArticle(KEY, page);
+    }
+
+    @Benchmark
+    public String retrieveCachedArticle() {
+        return targets.retrieveCachedArticle(KEY);
+    }
+
+    @Benchmark
+    public void cacheArticle() {
+        targets.cacheArticle(WRITE_KEY, page);
+    }
+}
\ No newline at end of file
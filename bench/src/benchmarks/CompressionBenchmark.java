@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Kosten der Komprimierung im CacheStore ("cache_compression_level") für einen gerenderten Artikel,
+// das erreichte Verhältnis wird beim Setup ausgegeben. Wird eine Seite nicht kleiner, speichert der CacheStore sie
+// unkomprimiert, decompress() misst dann nur das Zurückgeben der Seite.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    @Param({ "1", "6", "9" })
+    public int level;
+
+    private Targets targets;
+    private String page;
+    private byte[] compressed;
+    private int rawLength;
+
+    @Setup
+    public void setup() throws Exception {
+        targets = Targets.load();
+        page = targets.generateNewsPage();
+        rawLength = page.getBytes(StandardCharsets.UTF_8).length;
+        compressed = targets.compressPage(page, level); // null, wenn nicht kleiner
+        if(compressed == null) {
+            System.out.printf("%nlevel %d: %d bytes, not smaller when compressed, stored uncompressed%n", level, rawLength);
+        }
+        else {
+            System.out.printf("%nlevel %d: %d -> %d bytes (%.1f%%)%n", level, rawLength, compressed.length, 100.0 * compressed.length / rawLength);
+        }
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return targets.compressPage(page, level);
+    }
+
+    @Benchmark
+    public String decompress() throws Exception {
+        return compressed == null ? page : targets.decompressPage(compressed, rawLength);
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsen der Api-Antworten: direkt aus dem Stream ins Modell gegenüber dem ganzen org.json-Baum
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+    @Param({ "homepage", "news", "search", "article" })
+    public String fixture;
+
+    private Targets targets;
+
+    @Setup
+    public void setup() {
+        targets = Targets.load();
+    }
+
+    @Benchmark
+    public Object model() throws Exception {
+        return targets.parseModel(fixture);
+    }
+
+    @Benchmark
+    public Object document() throws Exception {
+        return targets.parseDocument(fixture);
+    }
+}
\ No newline at end of file
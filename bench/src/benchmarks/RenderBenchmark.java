@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Rendern der Seiten aus bereits geparsten Api-Antworten (ohne Netzwerk und Cache).
+// Die Listen (Startseite, Ressort, Region) kommen sonst fast ganz aus dem TeaserCache, mit teaserCache=cold
+// wird er vor jedem Aufruf geleert, das entspricht einer Seite mit lauter neuen Artikeln.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+    @Param({ "warm", "cold" })
+    public String teaserCache;
+
+    private Targets targets;
+
+    @Setup
+    public void setup() {
+        targets = Targets.load();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTeaserCache() {
+        if(teaserCache.equals("cold")) {
+            targets.clearTeaserCache();
+        }
+    }
+
+    @Benchmark
+    public String homepage() throws Exception {
+        return targets.generateHomepage();
+    }
+
+    @Benchmark
+    public String topicHomepage() throws Exception {
+        return targets.generateTopicHomepage();
+    }
+
+    @Benchmark
+    public String regionalHomepage() throws Exception {
+        return targets.generateRegionalHomepage();
+    }
+
+    @Benchmark
+    public String searchPage() throws Exception {
+        return targets.generateSearchPage();
+    }
+
+    @Benchmark
+    public String newsPage() throws Exception {
+        return targets.generateNewsPage();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// GemtextWriter gegen das frühere Zusammenbauen mit page += ... (siehe ConcatRenderer in BenchTargets.java), mit -prof gc
+// vor allem für die Allokationen pro Seite. Der TeaserCache wird vor jedem Aufruf geleert, verglichen wird nur das Rendern.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderComparisonBenchmark {
+    @Param({ "homepage", "topic", "regional", "search", "news" })
+    public String page;
+
+    @Param({ "gemtextWriter", "concat" })
+    public String renderer;
+
+    private Targets targets;
+
+    @Setup
+    public void setup() throws Exception {
+        targets = Targets.load();
+        if(!render().equals(targets.generateWithConcat(page))) { // Sonst wären es nicht dieselben Seiten
+            throw new IllegalStateException("ConcatRenderer renders " + page + " differently");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTeaserCache() {
+        targets.clearTeaserCache();
+    }
+
+    @Benchmark
+    public String render() throws Exception {
+        if(renderer.equals("concat")) {
+            return targets.generateWithConcat(page);
+        }
+
+        switch(page) {
+            case "homepage": return targets.generateHomepage();
+            case "topic": return targets.generateTopicHomepage();
+            case "regional": return targets.generateRegionalHomepage();
+            case "search": return targets.generateSearchPage();
+            default: return targets.generateNewsPage();
+        }
+    }
+}
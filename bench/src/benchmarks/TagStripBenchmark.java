@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Entfernen der HTML-Tags aller Absätze eines Artikels, verglichen mit dem früheren regulären Ausdruck.
+// Wie auf der Artikelseite landet der Text jeweils in einem Puffer für die ganze Seite.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagStripBenchmark {
+    private static final Pattern TAG_PATTERN = Pattern.compile("<[\\w\\W]*?>");
+
+    private Targets targets;
+    private String[] paragraphs;
+
+    @Setup
+    public void setup() throws Exception {
+        targets = Targets.load();
+        paragraphs = targets.articleParagraphs();
+    }
+
+    @Benchmark
+    public int tagStripper() { // Schreibt direkt in den GemtextWriter, wandelt auch Entitäten um und hängt Links an
+        return targets.writeParagraphs(paragraphs);
+    }
+
+    @Benchmark
+    public int regexReplaceAll() { // So wie removeTags früher: das Muster wird bei jedem Aufruf kompiliert
+        StringBuilder page = new StringBuilder(paragraphs.length * 400);
+        for(String paragraph : paragraphs) {
+            page.append(paragraph.replaceAll("<[\\w\\W]*?>", "")).append('\n');
+        }
+        return page.length();
+    }
+
+    @Benchmark
+    public int regexPrecompiled() {
+        StringBuilder page = new StringBuilder(paragraphs.length * 400);
+        for(String paragraph : paragraphs) {
+            page.append(TAG_PATTERN.matcher(paragraph).replaceAll("")).append('\n');
+        }
+        return page.length();
+    }
+}
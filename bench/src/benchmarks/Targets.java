@@ -0,0 +1,41 @@
+package benchmarks;
+
+// JMH erlaubt keine Benchmarks im Standardpaket, die Klassen des Programms liegen aber genau dort.
+// BenchTargets (Standardpaket) implementiert deshalb dieses Interface und ruft den Code des Programms auf.
+public interface Targets {
+    String generateHomepage() throws Exception;
+    String generateTopicHomepage() throws Exception;
+    String generateRegionalHomepage() throws Exception;
+    String generateSearchPage() throws Exception;
+    String generateNewsPage() throws Exception;
+    void clearTeaserCache();
+    String generateWithConcat(String page) throws Exception; // "homepage", "topic", "regional", "search", "news"; wie vor GemtextWriter
+
+    String[] articleParagraphs() throws Exception;
+    int writeParagraphs(String[] paragraphs); // Wie auf der Artikelseite in einen GemtextWriter, gibt die Länge zurück
+    String[] parseDate(String isoDate); // ApiDate, formatiert wie auf den Seiten
+
+    void openCache(); // CacheHandler.initialize(), vor cacheArticle und retrieveCachedArticle
+    void cacheArticle(String key, String contents);
+    String retrieveCachedArticle(String key);
+    byte[] compressPage(String contents, int level); // null, wenn nicht kleiner
+    String decompressPage(byte[] compressed, int rawLength) throws Exception;
+
+    String[] stringArrayFromCEncoding(byte[] buffer, int size);
+
+    Object parseModel(String fixture) throws Exception; // Wie RequestHandler: Stream, direkt ins Modell (Teaser, Article, ...)
+    Object parseDocument(String fixture) throws Exception; // Alter Weg: ganzer String, ganzer JSONObject-Baum
+
+    static Targets load() {
+        try {
+            return (Targets)Class.forName("BenchTargets").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchTargets must be on the classpath", e);
+        }
+    }
+
+    static String fixtureDir() {
+        return System.getProperty("bench.fixtures", "bench/fixtures");
+    }
+}
\ No newline at end of file
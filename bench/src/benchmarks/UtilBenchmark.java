@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Kleine Hilfsfunktionen, die bei jeder Anfrage laufen
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilBenchmark {
+    private Targets targets;
+    private byte[] helperClientArgs;
+
+    @Setup
+    public void setup() {
+        targets = Targets.load();
+
+        // So wie helper-client.py die Argumente sendet
+        String[] args = {
+            "helper-client.py",
+            "action='doRequest'",
+            "query='https%3A%2F%2Fwww.tagesschau.de%2Fapi2%2Finland%2Fbundestag-wahl-101.json'",
+            "unique_file_path='/tmp/gemini-server/8f14e45fceea167a5a36dedd4bea2543'"
+        };
+        StringBuilder encoded = new StringBuilder();
+        for(String arg : args) {
+            encoded.append(arg).append('\0');
+        }
+        helperClientArgs = encoded.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String[] parseDate() {
+        return targets.parseDate("2021-06-10T20:15:00.000+02:00");
+    }
+
+    @Benchmark
+    public String[] stringArrayFromCEncoding() {
+        return targets.stringArrayFromCEncoding(helperClientArgs, helperClientArgs.length);
+    }
+}
\ No newline at end of file
@@ -1,17 +1,74 @@
+import os
 import socket
+import struct
 import sys
 
 PORT = 5555
 LOCALHOST = '127.0.0.1'
+HANDSHAKE = b'\xffTM\x01' # Gerahmtes Protokoll, siehe FramedConnection.java
+# Daemons ohne gerahmtes Protokoll halten den Handshake für ungültige Argumente und beenden sich,
+# für sie muss "MIRROR_PROTOCOL": "legacy" in cmd_env stehen
+USE_FRAMED = os.environ.get('MIRROR_PROTOCOL', 'framed') != 'legacy'
 
 binary_args = bytearray()
+unique_file_path = None
 for arg in sys.argv:
     binary_args.extend(bytes(arg, 'utf-8'))
     binary_args.append(0)
+    if arg.startswith("unique_file_path='"):
+        unique_file_path = arg[len("unique_file_path='"):-1]
 
-client = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
-client.connect((LOCALHOST, PORT))
-client.sendall(binary_args)
+def recv_exactly(client, size):
+    data = bytearray()
+    while len(data) < size:
+        chunk = client.recv(size - len(data))
+        if not chunk:
+            raise ConnectionError('connection closed')
+        data.extend(chunk)
+    return bytes(data)
 
-exit_code = client.recv(1)
-exit(exit_code[0])
\ No newline at end of file
+# Die Seite kommt in der Antwort zurück, der Daemon muss sie nicht erst in unique_file_path schreiben.
+# None, wenn die Verbindung abgelehnt wird oder der Daemon den Handshake nicht kennt (schließt ohne passende Antwort).
+# Eine langsame Antwort heißt nur, dass der Daemon ausgelastet ist: Es wird auf derselben Verbindung weiter gewartet,
+# eine zweite Verbindung würde die Anfrage doppelt stellen.
+def request_framed():
+    try:
+        client = socket.create_connection((LOCALHOST, PORT))
+    except ConnectionRefusedError:
+        return None
+    try:
+        client.sendall(HANDSHAKE)
+        try:
+            reply = recv_exactly(client, 1)
+        except ConnectionError:
+            return None
+        if reply != HANDSHAKE[:1]: # Überlastet, der Daemon schickt nur den Exit-Code
+            return reply[0]
+        if recv_exactly(client, len(HANDSHAKE) - 1) != HANDSHAKE[1:]:
+            return None
+
+        client.sendall(struct.pack('>II', 4 + len(binary_args), 0) + binary_args)
+        client.shutdown(socket.SHUT_WR) # Nur eine Anfrage, danach schließt der Daemon die Verbindung
+        length, _request_id = struct.unpack('>II', recv_exactly(client, 8))
+        response = recv_exactly(client, length - 4)
+    finally:
+        client.close()
+
+    if unique_file_path is not None:
+        with open(unique_file_path, 'wb') as outfile:
+            outfile.write(response[1:])
+    return response[0]
+
+# Altes Format: Der Daemon schreibt die Seite in unique_file_path, zurück kommt nur der Exit-Code
+def request_legacy():
+    client = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+    client.connect((LOCALHOST, PORT))
+    client.sendall(binary_args)
+
+    exit_code = client.recv(1)
+    return exit_code[0]
+
+exit_code = request_framed() if USE_FRAMED and unique_file_path is not None else None
+if exit_code is None:
+    exit_code = request_legacy()
+exit(exit_code)
@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.json.JSONException;
+
+// Ein gemeinsamer HttpClient für alle Anfragen an die Api, damit Verbindungen (HTTP/2) wiederverwendet werden.
+// Anfragen laufen asynchron: Bis die Antwort der Api beginnt, ist kein Thread belegt. Pro Host laufen höchstens
+// "api_max_requests_per_host" Anfragen gleichzeitig, weitere warten in einer Warteschlange.
+class ApiClient {
+    private static final int MAX_REQUESTS_PER_HOST = Settings.getInt("api_max_requests_per_host", 16);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(Settings.getInt("api_request_timeout", 10)); // Bis die ganze Antwort gelesen ist
+    private static volatile HttpClient client; // Erst nach initialize()
+    private static ExecutorService parsers; // Wird vor client gesetzt
+    private static final ConcurrentHashMap<String, HostLimiter> limiters = new ConcurrentHashMap<String, HostLimiter>();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger queued = new AtomicInteger();
+
+    static {
+        Metrics.registerGauge("api_in_flight", () -> inFlight.get());
+        Metrics.registerGauge("api_queued", () -> queued.get());
+    }
+
+    // Baut den HttpClient und seine Threads, ohne eine Anfrage zu senden. Muss vor dem ersten fetch() aufgerufen werden,
+    // weitere Aufrufe ändern nichts.
+    public static synchronized void initialize() {
+        if(client != null) {
+            return;
+        }
+
+        // Der Body wird geparst, während er ankommt, und das Lesen blockiert. Deshalb nicht auf den Threads des HttpClient,
+        // die liefern die Daten nach und dürfen nicht alle warten.
+        parsers = Executors.newFixedThreadPool(Settings.getInt("api_parser_threads", Math.max(2, Runtime.getRuntime().availableProcessors())), runnable -> {
+            Thread thread = new Thread(runnable, "api-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2) // Fällt automatisch auf HTTP/1.1 zurück, z.B. bei bench/mock-api.py
+            .connectTimeout(Duration.ofSeconds(Settings.getInt("api_connect_timeout", 5)))
+            .executor(Executors.newFixedThreadPool(Settings.getInt("api_threads", Math.max(2, Runtime.getRuntime().availableProcessors())), runnable -> {
+                Thread thread = new Thread(runnable, "api-client");
+                thread.setDaemon(true);
+                return thread;
+            }))
+            .build();
+    }
+
+    // Schlägt mit einer ApiRequestFailureException fehl, wenn die Api nicht mit 200 (oder 304) antwortet, und mit einer
+    // MissingJsonValueException, wenn in der Antwort etwas fehlt, das der reader braucht.
+    // Mit previous wird bedingt angefragt, bei 304 ist die Antwort notModified und es wird nichts geparst.
+    // endpoint ("homepage", "news", "search", "article") ist das Label für die Metriken.
+    public static <T> CompletableFuture<ApiResponse<T>> fetch(String endpoint, String url, ModelReader<T> reader, Validators previous) {
+        CompletableFuture<ApiResponse<T>> result = new CompletableFuture<ApiResponse<T>>();
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(REQUEST_TIMEOUT);
+            if(previous != null && previous.etag != null) {
+                builder.header("If-None-Match", previous.etag);
+            }
+            if(previous != null && previous.lastModified != null) {
+                builder.header("If-Modified-Since", previous.lastModified);
+            }
+            request = builder.build();
+        }
+        catch(IllegalArgumentException e) {
+            result.completeExceptionally(new ApiRequestFailureException("Invalid api url " + url, e));
+            return result;
+        }
+
+        Metrics.increment("api_requests_total");
+        HostLimiter limiter = limiters.computeIfAbsent(String.valueOf(request.uri().getHost()), host -> new HostLimiter());
+        limiter.submit(() -> { // Der Platz im HostLimiter bleibt belegt, bis der Body gelesen ist (höchstens REQUEST_TIMEOUT)
+            long sentAt = System.nanoTime(); // Ohne die Zeit in der Warteschlange des HostLimiter
+            CompletableFuture<HttpResponse<InputStream>> sent = client().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).whenComplete((response, error) -> {
+                Metrics.increment(Metrics.series("api_responses_total", "endpoint", endpoint, "status", error != null ? "error" : Integer.toString(response.statusCode())));
+            });
+            // HttpRequest.timeout gilt nur bis zu den Headern, ein Body, der mittendrin hängen bleibt, braucht eine eigene Frist
+            return sent.thenApplyAsync(response -> {
+                try {
+                    return parse(response, reader, previous);
+                }
+                catch(AppException e) {
+                    throw new CompletionException(e);
+                }
+            }, parsers).orTimeout(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).whenComplete((_parsed, error) -> {
+                Metrics.recordNanos(Metrics.series("api_request_duration_seconds", "endpoint", endpoint), System.nanoTime() - sentAt);
+                if(unwrap(error) instanceof TimeoutException) { // Schließen weckt den Parser, der im read() wartet, kommen die Header noch, wird nicht mehr gelesen
+                    Metrics.increment("api_timeouts_total");
+                    sent.thenAccept(response -> closeQuietly(response.body()));
+                }
+            });
+        }).whenComplete((parsed, error) -> {
+            if(error != null) {
+                Metrics.increment("api_failures_total");
+                Throwable cause = unwrap(error);
+                result.completeExceptionally(cause instanceof AppException || !(cause instanceof Exception) ? cause : new ApiRequestFailureException((Exception)cause));
+                return;
+            }
+            result.complete(parsed);
+        });
+        return result;
+    }
+
+    // Für Aufrufer, die synchron bleiben (z.B. Prewarmer)
+    public static <T> T await(CompletableFuture<T> future) throws AppException {
+        try {
+            return future.join();
+        }
+        catch(CompletionException e) {
+            Throwable cause = unwrap(e);
+            if(cause instanceof AppException) {
+                throw (AppException)cause;
+            }
+            else if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new ApiRequestFailureException((Exception)cause);
+        }
+    }
+
+    private static HttpClient client() {
+        HttpClient httpClient = client;
+        if(httpClient == null) {
+            throw new IllegalStateException("ApiClient.initialize() was not called");
+        }
+        return httpClient;
+    }
+
+    // Die eigentliche Ursache hinter CompletionException/ExecutionException
+    public static Throwable unwrap(Throwable error) {
+        while((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private static <T> ApiResponse<T> parse(HttpResponse<InputStream> response, ModelReader<T> reader, Validators previous) throws AppException {
+        Validators validators = Validators.fromHeaders(response.headers());
+        if(response.statusCode() == 304 && previous != null) {
+            Metrics.increment("api_not_modified_total");
+            closeQuietly(response.body());
+            return new ApiResponse<T>(null, previous.updatedBy(validators));
+        }
+        if(response.statusCode() != 200) {
+            closeQuietly(response.body()); // Gibt die Verbindung frei
+            throw new ApiRequestFailureException("The api responded with status " + response.statusCode() + " for " + response.uri());
+        }
+
+        // Direkt aus dem Stream, ohne die ganze Antwort vorher in ein byte[] zu laden; parseBody schließt den Stream
+        try {
+            return new ApiResponse<T>(RequestHandler.parseBody(response.body(), reader), validators);
+        }
+        catch(IOException | JSONException e) {
+            throw new ApiRequestFailureException(e);
+        }
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        }
+        catch(IOException _e) {}
+    }
+
+    // Begrenzt die gleichzeitigen Anfragen an einen Host, ohne dass ein Thread auf einen freien Platz wartet
+    private static class HostLimiter {
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<Runnable>();
+        private int running = 0;
+
+        <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+            CompletableFuture<T> result = new CompletableFuture<T>();
+            Runnable start = () -> {
+                inFlight.incrementAndGet();
+                CompletableFuture<T> started;
+                try {
+                    started = call.get();
+                }
+                catch(RuntimeException e) {
+                    started = CompletableFuture.failedFuture(e);
+                }
+
+                started.whenComplete((value, error) -> {
+                    inFlight.decrementAndGet();
+                    release();
+                    if(error != null) {
+                        result.completeExceptionally(error);
+                    }
+                    else {
+                        result.complete(value);
+                    }
+                });
+            };
+
+            boolean startNow;
+            synchronized(this) {
+                startNow = running < MAX_REQUESTS_PER_HOST;
+                if(startNow) {
+                    running++;
+                }
+                else {
+                    waiting.add(start);
+                    queued.incrementAndGet();
+                }
+            }
+            if(startNow) {
+                start.run();
+            }
+            return result;
+        }
+
+        private void release() {
+            Runnable next;
+            synchronized(this) {
+                next = waiting.poll();
+                if(next == null) {
+                    running--;
+                }
+            }
+            if(next != null) { // Der Platz geht direkt an die nächste Anfrage, nicht rekursiv im aktuellen Callback
+                queued.decrementAndGet();
+                client().executor().get().execute(next);
+            }
+        }
+    }
+}
+
+class ApiResponse<T> {
+    final T model; // null, wenn die Api mit 304 Not Modified geantwortet hat
+    final Validators validators;
+
+    ApiResponse(T model, Validators validators) {
+        this.model = model;
+        this.validators = validators;
+    }
+
+    boolean isNotModified() {
+        return model == null;
+    }
+}
+
+// Liest ein Modell (Teaser.java, Article.java) aus einer Api-Antwort, der Parser steht vor dessen '{'
+interface ModelReader<T> {
+    T read(JsonPullParser parser) throws IOException, MissingJsonValueException;
+
+    static <V> V required(V value, String name, String context) throws MissingJsonValueException {
+        if(value == null) {
+            throw new MissingJsonValueException("Missing or invalid \"" + name + "\" in " + context);
+        }
+        return value;
+    }
+}
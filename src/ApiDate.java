@@ -0,0 +1,109 @@
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+// Ein Zeitpunkt aus der Api ("2021-06-10T20:15:00.000+02:00"), beim Parsen einmal in Zahlen zerlegt.
+// Datum und Uhrzeit bleiben in der Zeitzone der Api, so wie sie auf den Seiten stehen, epochSecond ist für TtlPolicy.
+final class ApiDate {
+    private final int date; // yyyymmdd
+    private final int time; // hhmm
+    final long epochSecond; // -1 ohne Zeitzone
+
+    private ApiDate(int date, int time, long epochSecond) {
+        this.date = date;
+        this.time = time;
+        this.epochSecond = epochSecond;
+    }
+
+    // null, wenn Datum oder Uhrzeit fehlen oder ungültig sind
+    static ApiDate parse(String iso) {
+        if(iso == null || iso.length() < 16 || iso.charAt(4) != '-' || iso.charAt(7) != '-' || iso.charAt(10) != 'T' || iso.charAt(13) != ':') {
+            return null;
+        }
+
+        int year = digits(iso, 0, 4);
+        int month = digits(iso, 5, 2);
+        int day = digits(iso, 8, 2);
+        int hour = digits(iso, 11, 2);
+        int minute = digits(iso, 14, 2);
+        if(year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return null;
+        }
+
+        return new ApiDate(year * 10000 + month * 100 + day, hour * 100 + minute, epochSecond(iso, year, month, day, hour * 3600 + minute * 60));
+    }
+
+    boolean sameInstant(ApiDate other) { // Auch in derselben Zeitzone, sonst stünde eine andere Uhrzeit auf der Seite
+        return other != null && date == other.date && time == other.time && epochSecond == other.epochSecond;
+    }
+
+    int year() { return date / 10000; }
+    int month() { return date / 100 % 100; }
+    int day() { return date % 100; }
+    int hour() { return time / 100; }
+    int minute() { return time % 100; }
+
+    String formatDate() { // yyyy-MM-dd
+        return new GemtextWriter(10).date(this).toString();
+    }
+
+    String formatTime() { // HH:mm
+        return new GemtextWriter(5).time(this).toString();
+    }
+
+    // Sekunden und Bruchteile sind optional, danach muss "Z" oder "+hh:mm"/"-hh:mm" folgen
+    private static long epochSecond(String iso, int year, int month, int day, int secondOfDay) {
+        int pos = 16;
+        if(pos < iso.length() && iso.charAt(pos) == ':') {
+            int second = digits(iso, pos + 1, 2);
+            if(second < 0) {
+                return -1;
+            }
+            secondOfDay += second;
+            pos += 3;
+        }
+        if(pos < iso.length() && iso.charAt(pos) == '.') {
+            pos++;
+            while(pos < iso.length() && Character.isDigit(iso.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        int offset;
+        if(pos == iso.length() - 1 && iso.charAt(pos) == 'Z') {
+            offset = 0;
+        }
+        else if(pos == iso.length() - 6 && (iso.charAt(pos) == '+' || iso.charAt(pos) == '-') && iso.charAt(pos + 3) == ':') {
+            int offsetHours = digits(iso, pos + 1, 2);
+            int offsetMinutes = digits(iso, pos + 4, 2);
+            if(offsetHours < 0 || offsetMinutes < 0) {
+                return -1;
+            }
+            offset = (offsetHours * 3600 + offsetMinutes * 60) * (iso.charAt(pos) == '-' ? -1 : 1);
+        }
+        else {
+            return -1;
+        }
+
+        try {
+            return LocalDate.of(year, month, day).toEpochDay() * 86400 + secondOfDay - offset;
+        }
+        catch(DateTimeException _e) { // z.B. 31. Juni
+            return -1;
+        }
+    }
+
+    private static int digits(String s, int start, int count) { // -1, wenn keine Ziffern
+        int value = 0;
+        for(int i = start; i < start + count; i++) {
+            if(i >= s.length()) {
+                return -1;
+            }
+            int digit = s.charAt(i) - '0';
+            if(digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
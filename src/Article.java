@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Ein Artikel (Antwort auf eine "details"-Adresse), siehe Teaser.java
+final class Article {
+    static final ModelReader<Article> READER = Article::read;
+
+    final String title;
+    final ApiDate date;
+    final List<Paragraph> content; // Nur Absätze, die gerendert werden (Text, Überschrift, externe Seite)
+
+    private Article(String title, ApiDate date, List<Paragraph> content) {
+        this.title = title;
+        this.date = date;
+        this.content = content;
+    }
+
+    private static Article read(JsonPullParser parser) throws IOException, MissingJsonValueException {
+        String title = null;
+        String date = null;
+        List<Paragraph> content = null;
+
+        parser.beginObject();
+        String name;
+        while((name = parser.nextName()) != null) {
+            switch(name) {
+                case "title": title = parser.nextString(); break;
+                case "date": date = parser.nextString(); break;
+                case "content": content = Paragraph.readList(parser); break;
+                default: parser.skipValue();
+            }
+        }
+
+        return new Article(ModelReader.required(title, "title", "article"), ModelReader.required(ApiDate.parse(date), "date", "article"), ModelReader.required(content, "content", "article"));
+    }
+}
+
+final class Paragraph {
+    enum Type { TEXT, HEADLINE, HTML_EMBED }
+
+    final Type type;
+    final String value; // HTML bei TEXT und HEADLINE, die Adresse bei HTML_EMBED
+
+    private Paragraph(Type type, String value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    boolean isReporterLine() { // Steht am Anfang kursiv im Text, wird aber in der Infozeile unter dem Titel gerendert
+        return type == Type.TEXT && value.startsWith("<em>");
+    }
+
+    static List<Paragraph> readList(JsonPullParser parser) throws IOException, MissingJsonValueException {
+        if(!parser.beginOptionalArray()) {
+            return null; // Fehlt, wird vom Aufrufer gemeldet
+        }
+
+        ArrayList<Paragraph> paragraphs = new ArrayList<Paragraph>();
+        while(parser.hasNextElement()) {
+            Paragraph paragraph = read(parser);
+            if(paragraph != null) {
+                paragraphs.add(paragraph);
+            }
+        }
+        return Collections.unmodifiableList(paragraphs);
+    }
+
+    // null für Absätze, die nicht gerendert werden (Bilder, Videos, Boxen, ...)
+    private static Paragraph read(JsonPullParser parser) throws IOException, MissingJsonValueException {
+        String type = null;
+        String value = null;
+        String embedUrl = null;
+
+        parser.beginObject();
+        String name;
+        while((name = parser.nextName()) != null) {
+            switch(name) {
+                case "type": type = parser.nextString(); break;
+                case "value": value = parser.nextString(); break;
+                case "htmlEmbed": embedUrl = readEmbedUrl(parser); break;
+                default: parser.skipValue();
+            }
+        }
+
+        switch(ModelReader.required(type, "type", "paragraph")) {
+            case "text": return new Paragraph(Type.TEXT, ModelReader.required(value, "value", "text paragraph"));
+            case "headline": return new Paragraph(Type.HEADLINE, ModelReader.required(value, "value", "headline"));
+            case "htmlEmbed": return new Paragraph(Type.HTML_EMBED, ModelReader.required(embedUrl, "htmlEmbed.url", "paragraph"));
+            default: return null;
+        }
+    }
+
+    private static String readEmbedUrl(JsonPullParser parser) throws IOException {
+        String url = null;
+        if(parser.beginOptionalObject()) {
+            String name;
+            while((name = parser.nextName()) != null) {
+                if(name.equals("url")) {
+                    url = parser.nextString();
+                }
+                else {
+                    parser.skipValue();
+                }
+            }
+        }
+        return url;
+    }
+}
@@ -1,12 +1,9 @@
 import java.lang.reflect.Method;
-import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarEntry;
+import java.io.IOException;
 import java.io.InputStream;
-import java.security.ProtectionDomain;
-import java.security.Permissions;
-import java.security.AllPermission;
-import java.io.File;
 
 class Bootstrap {
     private static final String mainClassName = "Program";
@@ -15,61 +12,95 @@ class Bootstrap {
         try {
             ClassLoader bootstrapClassLoader = Bootstrap.class.getClassLoader(); // Der Classloader am Anfang
             ClassLoader classLoader = new JarClassLoader(bootstrapClassLoader); // Erstelle neuer Classloader
-            Class mainClass = classLoader.loadClass(mainClassName);
-            
+            Class<?> mainClass = classLoader.loadClass(mainClassName);
+
             Method main = mainClass.getMethod("main", String[].class); // Finde und führe die main() Methode aus
             main.setAccessible(true); // Mache main() ausführbar
             main.invoke(null, new Object[] { args });
         }
         catch(Exception e) {
-            System.out.println(e.getCause());
+            System.out.println(e.getCause() != null ? e.getCause() : e);
         }
     }
 }
 
+// Lädt die Klassen des Programms und die aus der eingebetteten jsonJava.jar selbst, damit beide sich sehen.
+// Die eingebettete jar-Datei wird einmal beim Start entpackt (nur die .class Dateien, etwa 100 KB), danach ist
+// jede Klasse ein Zugriff auf die HashMap. Bereits definierte Klassen liefert findLoadedClass().
 class JarClassLoader extends ClassLoader {
     private static final String JARFILE_NAME = "jsonJava.jar";
 
-    public JarClassLoader(ClassLoader parent) {
+    static {
+        registerAsParallelCapable(); // Ein Lock pro Klassenname statt einem für den ganzen ClassLoader
+    }
+
+    private final HashMap<String, byte[]> nestedClasses; // Dateiname in der jar-Datei -> Inhalt, nach dem Start nur gelesen
+
+    public JarClassLoader(ClassLoader parent) throws IOException {
         super(parent);
+        this.nestedClasses = readNestedJar(parent);
     }
 
     @Override
-    public Class loadClass(String classname) throws ClassNotFoundException {
-        try {
-            if(classname.startsWith("java")) { // Eigene ClassLoader darf java.* Klassen nicht laden
-                return super.loadClass(classname);
-            }
-            
-            String filename = classname.replace(".", "/") + ".class"; // Öffne Datei
-            InputStream filestream = this.getClass().getClassLoader().getResourceAsStream(filename);
+    protected Class<?> loadClass(String classname, boolean resolve) throws ClassNotFoundException {
+        if(isPlatformClass(classname)) { // Eigene ClassLoader dürfen java.* Klassen nicht laden
+            return super.loadClass(classname, resolve);
+        }
 
-            byte[] bytes = null; // Wenn es gefunden wird, lesen, sonst in jar-Datei suchen
-            if(filestream != null) {
-                bytes = filestream.readAllBytes();
-            }
-            else {
-                InputStream jarFilestream = this.getClass().getClassLoader().getResourceAsStream(JARFILE_NAME); // Öffne jar-Datei
-                JarInputStream jarstream = new JarInputStream(jarFilestream);
-                JarEntry nextEntry = jarstream.getNextJarEntry();
-                while(nextEntry != null) { // Lese alle Dateien, bis es gefunden wird
-                    if(nextEntry.getName().equals(filename)) {
-                        bytes = jarstream.readAllBytes();
-                        break;
-                    }
-
-                    nextEntry = jarstream.getNextJarEntry();
+        synchronized(getClassLoadingLock(classname)) {
+            Class<?> cls = findLoadedClass(classname);
+            if(cls == null) {
+                byte[] bytes;
+                try {
+                    bytes = readClass(classname);
                 }
+                catch(IOException e) {
+                    throw new ClassNotFoundException(classname, e);
+                }
+
+                if(bytes == null) { // Weder im Programm noch in der jar-Datei, die Superklasse soll es versuchen
+                    return super.loadClass(classname, resolve);
+                }
+                cls = defineClass(classname, bytes, 0, bytes.length); // Definiere die Klasse, damit es verwendet werden kann
             }
-            
-            Class cls = this.defineClass(classname, bytes, 0, bytes.length); // Definiere die Klasse, damit es verwendet werden kann
-            this.resolveClass(cls);
 
+            if(resolve) {
+                resolveClass(cls);
+            }
             return cls;
-            
         }
-        catch (Exception e) { // Wenn die Klasse nicht geladen werden kann, soll die Superklasse versuchen es zu laden
-            return super.loadClass(classname);
+    }
+
+    private byte[] readClass(String classname) throws IOException {
+        String filename = classname.replace(".", "/") + ".class";
+        try(InputStream filestream = getParent().getResourceAsStream(filename)) {
+            if(filestream != null) {
+                return filestream.readAllBytes();
+            }
+        }
+
+        return nestedClasses.get(filename);
+    }
+
+    private static boolean isPlatformClass(String classname) {
+        return classname.startsWith("java.") || classname.startsWith("javax.") || classname.startsWith("jdk.") || classname.startsWith("sun.") || classname.startsWith("com.sun.");
+    }
+
+    private static HashMap<String, byte[]> readNestedJar(ClassLoader parent) throws IOException {
+        HashMap<String, byte[]> classes = new HashMap<String, byte[]>();
+        InputStream jarFilestream = parent.getResourceAsStream(JARFILE_NAME);
+        if(jarFilestream == null) { // Ohne eingebettete jar-Datei, z.B. mit jsonJava.jar im Classpath
+            return classes;
+        }
+
+        try(JarInputStream jarstream = new JarInputStream(jarFilestream)) {
+            JarEntry entry;
+            while((entry = jarstream.getNextJarEntry()) != null) { // Einmal alle Dateien lesen
+                if(entry.getName().endsWith(".class")) {
+                    classes.put(entry.getName(), jarstream.readAllBytes());
+                }
+            }
         }
+        return classes;
     }
-}
\ No newline at end of file
+}
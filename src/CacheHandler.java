@@ -1,94 +1,214 @@
 import java.io.File;
-import java.io.FileWriter;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
 import java.lang.Thread;
 
 class CacheHandler {
-    private static final int MAX_CACHE_DURATION = 1800; // 1800 s = 30 min
     private static final String CACHE_DIR = "cache";
     private static final int CACHE_CLEAR_TIME = 21600; // 6 Stunden
-    private static long lastCacheClear = Instant.now().getEpochSecond();
+    private static final boolean SERVE_STALE = Settings.getBoolean("serve_stale", false);
+    // Mit "serve_stale" wird eine Seite höchstens so lange nach ihrem Ablauf noch veraltet ausgeliefert, danach wird gewartet
+    private static final int MAX_STALE_AGE = Settings.getInt("max_stale_age", 21600);
+    // Abgelaufene Seiten bleiben so lange, um sie mit einer bedingten Anfrage zu prüfen (oder veraltet auszuliefern), danach wird neu generiert
+    private static final int RETENTION_DURATION = Math.max(MAX_STALE_AGE, TtlPolicy.maxTtl());
+    private static final MemoryCache memoryCache = new MemoryCache(Settings.getInt("memory_cache_bytes", 32 * 1024 * 1024), RETENTION_DURATION);
+    private static volatile CacheStore diskCache; // Erst nach initialize()
+    private static final SingleFlight inFlight = new SingleFlight();
+    private static final Set<String> refreshing = ConcurrentHashMap.newKeySet();
 
-    public static String retrieveCachedArticle(String articleUrl) { // null, wenn Zeit abgelaufen oder nicht vorhanden
-        String filename = getCachedName(articleUrl);
+    // Öffnet den CacheStore im Cache-Ordner, muss vor der ersten Anfrage aufgerufen werden. Nicht bei "--warmup-only",
+    // dort wird kein Cache gebraucht. Weitere Aufrufe ändern nichts.
+    public static synchronized void initialize() {
+        if(diskCache != null) {
+            return;
+        }
+
+        CacheStore store = new CacheStore(new File(CACHE_DIR), RETENTION_DURATION, Settings.getInt("cache_segment_bytes", 16 * 1024 * 1024), Settings.getInt("cache_compression_level", 1));
+        store.deleteLegacyFiles();
         try {
-            File dir = new File(CACHE_DIR);
-            if(!dir.isDirectory()) {
-                dir.mkdir();
-            }
+            store.recover();
+        }
+        catch(IOException e) { // Ohne Segmente läuft der Cache nur im Speicher, put() versucht es erneut
+            Program.log("Failed to open cache in " + CACHE_DIR + ": " + e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(store::writeIndex, "cache-index"));
+        diskCache = store;
+    }
 
-            File file = new File(filename);
-            
-            if(isInvalid(file)) {
-                file.delete();
-                return null;
-            }
+    public static String retrieveCachedArticle(String articleUrl) { // null, wenn Zeit abgelaufen oder nicht vorhanden
+        CachedPage page = lookup(articleUrl);
+        if(page == null || !page.isFresh(TtlPolicy.baseTtl(null))) {
+            return null;
+        }
 
-            FileReader fr = new FileReader(filename);
-            BufferedReader br = new BufferedReader(fr);
-            
-            String articleContents = "";
-            String currentLine = br.readLine();
-            while(currentLine != null) {
-                articleContents += currentLine + "\n";
-                currentLine = br.readLine();
+        return page.contents();
+    }
+
+    public static CompletableFuture<String> retrieveOrGenerate(String endpoint, String articleUrl, AsyncPageSupplier generator) {
+        CachedPage page = lookup(articleUrl);
+        if(page != null) {
+            if(page.isFresh(TtlPolicy.baseTtl(endpoint))) {
+                countRequest(endpoint, "hit");
+                return CompletableFuture.completedFuture(page.contents());
+            }
+            else if(SERVE_STALE && page.secondsLeft(TtlPolicy.baseTtl(endpoint)) >= -MAX_STALE_AGE) { // Alte Seite sofort zurückgeben und im Hintergrund neu generieren
+                countRequest(endpoint, "stale");
+                Metrics.increment("cache_stale_served_total");
+                refreshInBackground(endpoint, articleUrl, page, generator);
+                return CompletableFuture.completedFuture(page.contents());
             }
+            else if(SERVE_STALE) { // Zu lange abgelaufen, die Seite bleibt nur für die bedingte Anfrage
+                Metrics.increment("cache_stale_rejected_total");
+            }
+        }
 
-            return articleContents;
+        countRequest(endpoint, "miss");
+        return generateAndCache(endpoint, articleUrl, 0, page, generator);
+    }
+
+    public static String refreshIfExpiring(String endpoint, String articleUrl, int withinSeconds, AsyncPageSupplier generator) throws AppException {
+        CachedPage page = lookup(articleUrl);
+        if(page != null && page.secondsLeft(TtlPolicy.baseTtl(endpoint)) >= withinSeconds) {
+            return page.contents(); // Bleibt lange genug gültig
         }
-        catch(IOException _e) {
-            return null;
+
+        return ApiClient.await(generateAndCache(endpoint, articleUrl, withinSeconds, page, generator));
+    }
+
+    // Generiert eine Seite im Hintergrund, die wahrscheinlich als nächstes angefragt wird (z.B. die nächste Suchseite)
+    public static void prefetch(String endpoint, String articleUrl, AsyncPageSupplier generator) {
+        CachedPage page = lookup(articleUrl);
+        if(page != null && page.isFresh(TtlPolicy.baseTtl(endpoint))) {
+            return;
         }
+
+        Metrics.increment(Metrics.series("cache_prefetch_total", "endpoint", endpoint));
+        generateAndCache(endpoint, articleUrl, 0, page, generator).whenComplete((contents, error) -> {
+            if(error != null) {
+                Metrics.increment("cache_prefetch_failures_total");
+                Throwable cause = ApiClient.unwrap(error);
+                Program.log("Prefetch of " + articleUrl + " failed: " + (cause instanceof AppException ? ((AppException)cause).getInternalDetails() : cause.toString()));
+            }
+        });
+    }
+
+    public static int getCacheDuration(String endpoint) { // Grundwert der Gültigkeit in Sekunden, null für den Standardwert
+        return TtlPolicy.baseTtl(endpoint);
     }
 
     public static void cacheArticle(String articleUrl, String articleContents) {
-        String filename = getCachedName(articleUrl);
+        cacheArticle(articleUrl, new CachedPage(articleContents, Instant.now().getEpochSecond(), Validators.NONE, CachedPage.UNKNOWN_TTL));
+    }
 
-        try {
-            FileWriter fw = new FileWriter(filename);
-            BufferedWriter br = new BufferedWriter(fw);
+    static void cacheArticle(String articleUrl, CachedPage page) {
+        memoryCache.put(articleUrl, page);
 
-            br.write(articleContents);
-            br.close();
+        try {
+            diskCache().put(articleUrl, page);
+        }
+        catch(IOException e) {
+            Program.log("Failed to cache " + articleUrl + ": " + e);
         }
-        catch(IOException _e) {}
     }
 
-    public static void asyncHandleCacheClear() {
-        long currentUnixTime = Instant.now().getEpochSecond();
-        if(lastCacheClear + CACHE_CLEAR_TIME < currentUnixTime) {
-            new ClearCacheThread().start();
-            lastCacheClear = currentUnixTime;
+    // Die Api hat 304 geantwortet: Die Seite gilt wieder als neu, ohne dass sie neu gerendert wird
+    private static CachedPage revalidated(String articleUrl, CachedPage page, Validators validators, int ttl) {
+        CachedPage renewed = page.renewed(Instant.now().getEpochSecond(), validators, ttl); // Bleibt komprimiert, wie sie war
+        cacheArticle(articleUrl, renewed);
+
+        Metrics.increment("cache_revalidated_total");
+        return renewed;
+    }
+
+    private static CachedPage lookup(String articleUrl) { // Gibt auch veraltete Seiten zurück, solange sie noch aufbewahrt werden
+        CachedPage memoryResult = memoryCache.get(articleUrl);
+        if(memoryResult != null) {
+            return memoryResult;
+        }
+
+        CachedPage page = diskCache().get(articleUrl);
+        if(page == null) {
+            Metrics.increment("cache_disk_misses_total");
+            return null;
         }
+
+        memoryCache.put(articleUrl, page);
+        Metrics.increment("cache_disk_hits_total");
+        return page;
     }
 
-    // Das muss wegen des Threads public sein
-    public static void clearCache() throws IOException {
-        File cacheDir = new File(CACHE_DIR);
-        for(File file : cacheDir.listFiles()) {
-            if(isInvalid(file)) {
-                file.delete();
+    // stalePage ist die abgelaufene Seite aus dem Cache (oder null), mit ihren Validatoren wird bedingt angefragt.
+    // Eine gerade generierte Seite wird übernommen, wenn sie noch mindestens minSecondsLeft gültig ist.
+    private static CompletableFuture<String> generateAndCache(String endpoint, String articleUrl, int minSecondsLeft, CachedPage stalePage, AsyncPageSupplier generator) {
+        int baseTtl = TtlPolicy.baseTtl(endpoint);
+
+        // Bei gleichzeitigen Anfragen wird die Seite nur einmal generiert, die anderen bekommen dasselbe Ergebnis
+        return inFlight.runAsync(articleUrl, () -> {
+            CachedPage justCached = memoryCache.get(articleUrl); // Vielleicht wurde die Seite gerade fertig generiert
+            if(justCached != null && justCached.secondsLeft(baseTtl) >= minSecondsLeft) {
+                return CompletableFuture.completedFuture(justCached.contents());
             }
+
+            CachedPage previous = justCached != null ? justCached : stalePage;
+            Validators validators = previous != null && previous.validators.canRevalidate() ? previous.validators : null;
+            return generator.generate(validators).thenApply(generatedPage -> {
+                if(generatedPage.isNotModified()) { // Das Alter eines Artikels kennt nur die alte Gültigkeit, die nicht kürzer werden soll
+                    int ttl = Math.max(previous.ttl, TtlPolicy.ttlFor(endpoint, generatedPage.validators, -1));
+                    return revalidated(articleUrl, previous, generatedPage.validators, ttl).contents();
+                }
+
+                int ttl = TtlPolicy.ttlFor(endpoint, generatedPage.validators, generatedPage.publishedAt);
+                cacheArticle(articleUrl, new CachedPage(generatedPage.contents, Instant.now().getEpochSecond(), generatedPage.validators, ttl));
+                return generatedPage.contents;
+            });
+        });
+    }
+
+    private static void refreshInBackground(String endpoint, String articleUrl, CachedPage stalePage, AsyncPageSupplier generator) {
+        if(!refreshing.add(articleUrl)) {
+            return; // Wird schon neu generiert
         }
+
+        // Läuft asynchron weiter, ohne dass ein Thread auf die Api wartet
+        generateAndCache(endpoint, articleUrl, 0, stalePage, generator).whenComplete((generatedPage, error) -> {
+            refreshing.remove(articleUrl);
+            if(error == null) {
+                Metrics.increment("cache_refresh_total");
+                return;
+            }
+
+            Metrics.increment("cache_refresh_failures_total");
+            Throwable cause = ApiClient.unwrap(error);
+            Program.log("Background refresh of " + articleUrl + " failed: " + (cause instanceof AppException ? ((AppException)cause).getInternalDetails() : cause.toString()));
+        });
     }
 
-    private static String getCachedName(String articleUrl) {
-        String filename = articleUrl.replace("https://", "").replace("/", ".") + ".gmi";
-        return CACHE_DIR + File.separatorChar + filename;
+    private static CacheStore diskCache() {
+        CacheStore store = diskCache;
+        if(store == null) {
+            throw new IllegalStateException("CacheHandler.initialize() was not called");
+        }
+        return store;
     }
 
-    private static boolean isInvalid(File file) {
-        long lastModified = file.lastModified() / 1000; // ms zu s
-        long currentUnixTime = Instant.now().getEpochSecond();
-        if(lastModified + MAX_CACHE_DURATION < currentUnixTime) {
-            return true;
+    private static void countRequest(String endpoint, String result) {
+        Metrics.increment(Metrics.series("cache_requests_total", "endpoint", endpoint, "result", result));
+    }
+
+    public static void asyncHandleCacheClear() {
+        if(diskCache().claimCompaction(CACHE_CLEAR_TIME)) { // Der Zeitpunkt der letzten Kompaktierung steht im Index des CacheStore
+            new ClearCacheThread().start();
         }
+    }
 
-        return false;
+    // Das muss wegen des Threads public sein
+    public static void clearCache() {
+        memoryCache.removeExpired();
+        diskCache().compact();
     }
 }
 
@@ -100,4 +220,82 @@ class ClearCacheThread extends Thread {
         }
         catch(Exception _e) {}
     }
-}
\ No newline at end of file
+}
+
+class CachedPage {
+    static final int UNKNOWN_TTL = -1;
+
+    private volatile String contents; // Komprimierte Seiten aus dem CacheStore werden erst beim ersten Zugriff entpackt
+    final byte[] compressed; // Deflate (PageCodec), null wenn nicht komprimiert vorhanden
+    final int rawLength; // Länge in UTF-8 Bytes, nur mit compressed bekannt
+    final long createdAt; // Unix-Zeit in Sekunden, bei einer 304-Antwort der Api die Zeit der Prüfung
+    final Validators validators;
+    final int ttl; // Von TtlPolicy beim Speichern bestimmt, UNKNOWN_TTL für den Grundwert der Aktion
+
+    CachedPage(String contents, long createdAt, Validators validators, int ttl) {
+        this(contents, null, -1, createdAt, validators, ttl);
+    }
+
+    CachedPage(byte[] compressed, int rawLength, long createdAt, Validators validators, int ttl) {
+        this(null, compressed, rawLength, createdAt, validators, ttl);
+    }
+
+    private CachedPage(String contents, byte[] compressed, int rawLength, long createdAt, Validators validators, int ttl) {
+        this.contents = contents;
+        this.compressed = compressed;
+        this.rawLength = rawLength;
+        this.createdAt = createdAt;
+        this.validators = validators;
+        this.ttl = ttl;
+    }
+
+    String contents() {
+        String result = contents;
+        if(result == null) { // Zwei Threads entpacken im schlimmsten Fall beide, das Ergebnis ist gleich
+            try {
+                result = PageCodec.decompress(compressed, rawLength);
+            }
+            catch(DataFormatException e) {
+                throw new IllegalStateException("Damaged compressed page in cache", e);
+            }
+            contents = result;
+        }
+        return result;
+    }
+
+    CachedPage renewed(long createdAt, Validators validators, int ttl) {
+        return new CachedPage(contents, compressed, rawLength, createdAt, validators, ttl);
+    }
+
+    long estimatedSize() { // Ungefährer Speicherbedarf, ändert sich nicht durch das Entpacken
+        if(compressed == null) {
+            return 2L * contents.length(); // UTF-16
+        }
+        return 2L * rawLength + compressed.length; // Deutscher Text hat kaum Zeichen mit mehr als einem Byte
+    }
+
+    long secondsLeft(int defaultTtl) { // Negativ, wenn abgelaufen
+        return createdAt + (ttl == UNKNOWN_TTL ? defaultTtl : ttl) - Instant.now().getEpochSecond();
+    }
+
+    boolean isFresh(int defaultTtl) {
+        return secondsLeft(defaultTtl) >= 0;
+    }
+}
+
+// Ergebnis eines AsyncPageSupplier: die neue Seite oder, wenn die Api 304 geantwortet hat, nur neue Validatoren
+class GeneratedPage {
+    final String contents; // null, wenn unverändert
+    final Validators validators;
+    final long publishedAt; // Datum des Artikels für TtlPolicy, -1 wenn unbekannt
+
+    GeneratedPage(String contents, Validators validators, long publishedAt) {
+        this.contents = contents;
+        this.validators = validators;
+        this.publishedAt = publishedAt;
+    }
+
+    boolean isNotModified() {
+        return contents == null;
+    }
+}
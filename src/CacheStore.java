@@ -0,0 +1,537 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Zweite Stufe des Caches: alle Seiten in wenigen Segmentdateien ("segment-<n>.log") statt einer Datei pro Url.
+// Einträge werden nur an das aktive Segment angehängt, ein Index im Speicher zeigt auf die neueste Version jedes
+// Schlüssels. compact() verwirft abgelaufene Einträge und kopiert Segmente mit viel Verschnitt um.
+//
+// Aufbau eines Eintrags (big endian):
+//   i32 Länge des Rests, i32 CRC32 des Rests, u8 Flags, u16 Länge des Schlüssels, Schlüssel (UTF-8),
+//   i64 createdAt, i32 ttl, u16 Länge der Validatoren, Validators.encode() (UTF-8), Inhalt
+// Der Inhalt ist UTF-8 oder mit FLAG_DEFLATE: i32 Länge in UTF-8 Bytes, Deflate (PageCodec)
+//
+// Der Index wird nach jedem neuen Segment, nach compact() und beim Beenden in "index" gespeichert und beim Start
+// in einem Lesevorgang geladen. Nur was danach an die Segmente angehängt wurde, muss noch eingelesen werden.
+// Aufbau: i32 INDEX_MAGIC, i32 INDEX_VERSION, i64 letzte Kompaktierung, i32 nächste Segmentnummer,
+//   i32 Anzahl Segmente, je i32 Nummer und i64 erfasste Länge,
+//   i32 Anzahl Einträge, je u16 Länge des Schlüssels, Schlüssel, i32 Segment, i64 Position, i32 Länge,
+//   i32 Beginn des Inhalts, u8 Flags, i64 createdAt, i32 ttl, u16 Länge der Validatoren, Validatoren,
+//   i32 CRC32 über alles davor
+class CacheStore {
+    static final byte FLAG_DEFLATE = 1;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final String INDEX_NAME = "index";
+    private static final int INDEX_MAGIC = 0x544D4349; // "TMCI"
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 8; // Länge und CRC32
+    private static final double COMPACTION_RATIO = 0.5; // Segmente mit weniger gültigen Bytes werden umkopiert
+
+    private final File dir;
+    private final int retention;
+    private final long segmentBytes;
+    private final int compressionLevel; // 0 für unkomprimiert
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<String, Location>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>(); // Nur mit Lock auf this
+    private Segment active;
+    private int nextSegmentId = 0; // Nummern werden nie wiederverwendet, ein alter Index kann sonst auf ein neues Segment zeigen
+    private final AtomicLong lastCompaction = new AtomicLong(Instant.now().getEpochSecond());
+    private final Object indexLock = new Object(); // Nur ein Thread schreibt den Index
+
+    public CacheStore(File dir, int retention, long segmentBytes, int compressionLevel) {
+        this.dir = dir;
+        this.retention = retention;
+        this.segmentBytes = segmentBytes;
+        this.compressionLevel = Math.max(0, Math.min(compressionLevel, 9));
+
+        Metrics.registerGauge("cache_store_entries", () -> index.size());
+        Metrics.registerGauge("cache_store_segments", () -> getSegmentCount());
+        Metrics.registerGauge("cache_store_bytes", () -> getTotalBytes());
+    }
+
+    public CachedPage get(String key) { // null, wenn nicht vorhanden oder länger als retention abgelaufen
+        for(int attempt = 0; attempt < 2; attempt++) {
+            Location location = index.get(key);
+            if(location == null || location.createdAt + retention < Instant.now().getEpochSecond()) {
+                return null;
+            }
+
+            try {
+                ByteBuffer contents = location.segment.read(location.offset + location.contentsOffset, location.length - location.contentsOffset);
+                if((location.flags & FLAG_DEFLATE) != 0) { // Entpackt wird erst, wenn die Seite ausgeliefert wird
+                    int rawLength = contents.getInt();
+                    byte[] compressed = new byte[contents.remaining()];
+                    contents.get(compressed);
+                    return new CachedPage(compressed, rawLength, location.createdAt, location.validators, location.ttl);
+                }
+                return new CachedPage(new String(contents.array(), StandardCharsets.UTF_8), location.createdAt, location.validators, location.ttl);
+            }
+            catch(ClosedChannelException _e) {} // Segment wurde gerade kompaktiert, der Index zeigt schon auf die Kopie
+            catch(IOException e) {
+                Program.log("Failed to read " + key + " from cache: " + e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // Jeder Eintrag wird mit einem einzigen Schreibvorgang angehängt, gleichzeitige Aufrufe überschreiben sich nicht
+    public void put(String key, CachedPage page) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] validatorBytes = page.validators.encode().getBytes(StandardCharsets.UTF_8);
+        if(keyBytes.length > 0xFFFF || validatorBytes.length > 0xFFFF) {
+            throw new IOException("Cache key or validators too long for " + key);
+        }
+
+        // Schon komprimierte Seiten (z.B. nach einer 304-Antwort) werden unverändert übernommen
+        byte[] contents = page.compressed;
+        int rawLength = page.rawLength;
+        if(contents == null) {
+            byte[] raw = page.contents().getBytes(StandardCharsets.UTF_8);
+            contents = compressionLevel > 0 ? PageCodec.compress(raw, compressionLevel) : null;
+            rawLength = raw.length;
+            if(contents == null) { // Nicht kleiner geworden
+                contents = raw;
+                rawLength = -1;
+            }
+        }
+        boolean deflated = rawLength >= 0;
+
+        int contentsOffset = HEADER_SIZE + 1 + 2 + keyBytes.length + 8 + 4 + 2 + validatorBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(contentsOffset + (deflated ? 4 : 0) + contents.length);
+        record.putInt(record.capacity() - HEADER_SIZE).putInt(0);
+        record.put(deflated ? FLAG_DEFLATE : 0).putShort((short)keyBytes.length).put(keyBytes);
+        record.putLong(page.createdAt).putInt(page.ttl);
+        record.putShort((short)validatorBytes.length).put(validatorBytes);
+        if(deflated) {
+            record.putInt(rawLength);
+        }
+        record.put(contents);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, record.capacity() - HEADER_SIZE);
+        record.putInt(4, (int)crc.getValue());
+        record.flip();
+
+        append(key, record, contentsOffset, deflated ? FLAG_DEFLATE : 0, page.createdAt, page.ttl, page.validators, null);
+        Metrics.add("cache_store_written_bytes_total", record.limit());
+    }
+
+    // true, wenn die letzte Kompaktierung länger als intervalSeconds her ist (auch über Neustarts hinweg).
+    // Gilt dann sofort als erledigt, damit nur ein Aufrufer compact() startet.
+    public boolean claimCompaction(int intervalSeconds) {
+        long last = lastCompaction.get();
+        long now = Instant.now().getEpochSecond();
+        return last + intervalSeconds < now && lastCompaction.compareAndSet(last, now);
+    }
+
+    // Verwirft Einträge, die länger als retention abgelaufen sind, und kopiert die gültigen Einträge aus Segmenten
+    // mit viel Verschnitt in das aktive Segment. Die alten Segmente werden danach gelöscht.
+    public void compact() {
+        List<Segment> sealed; // Vor dem Durchsuchen des Index, damit kein Eintrag in einem dieser Segmente übersehen wird
+        synchronized(this) {
+            sealed = new ArrayList<Segment>(segments.values());
+            sealed.remove(active);
+        }
+
+        long now = Instant.now().getEpochSecond();
+        Map<Segment, List<Map.Entry<String, Location>>> liveBySegment = new HashMap<Segment, List<Map.Entry<String, Location>>>();
+        for(Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if(location.createdAt + retention < now) {
+                if(index.remove(entry.getKey(), location)) {
+                    location.segment.liveBytes.addAndGet(-location.length);
+                    Metrics.increment("cache_store_expired_total");
+                }
+                continue;
+            }
+            liveBySegment.computeIfAbsent(location.segment, segment -> new ArrayList<Map.Entry<String, Location>>()).add(entry);
+        }
+
+        for(Segment segment : sealed) {
+            if(segment.liveBytes.get() >= segment.size * COMPACTION_RATIO) {
+                continue;
+            }
+
+            try {
+                for(Map.Entry<String, Location> entry : liveBySegment.getOrDefault(segment, new ArrayList<Map.Entry<String, Location>>())) {
+                    Location location = entry.getValue();
+                    ByteBuffer record = segment.read(location.offset, location.length);
+                    append(entry.getKey(), record, location.contentsOffset, location.flags, location.createdAt, location.ttl, location.validators, location);
+                }
+            }
+            catch(IOException e) {
+                Program.log("Failed to compact cache segment " + segment.file + ": " + e);
+                continue;
+            }
+
+            synchronized(this) {
+                segments.remove(segment.id);
+            }
+            segment.delete();
+            Metrics.increment("cache_store_compactions_total");
+        }
+
+        writeIndex();
+    }
+
+    // Speichert eine Momentaufnahme des Index. Was danach angehängt wird, liest recover() aus den Segmenten nach.
+    public void writeIndex() {
+        List<Map.Entry<String, Location>> entries;
+        TreeMap<Integer, Long> sizes = new TreeMap<Integer, Long>();
+        int nextId;
+        synchronized(this) { // Index und Längen der Segmente müssen zusammenpassen
+            entries = new ArrayList<Map.Entry<String, Location>>(index.entrySet());
+            for(Segment segment : segments.values()) {
+                sizes.put(segment.id, segment.size);
+            }
+            nextId = nextSegmentId;
+        }
+        if(sizes.isEmpty()) {
+            return;
+        }
+
+        synchronized(indexLock) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 160);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeLong(lastCompaction.get());
+                out.writeInt(nextId);
+
+                out.writeInt(sizes.size());
+                for(Map.Entry<Integer, Long> size : sizes.entrySet()) {
+                    out.writeInt(size.getKey());
+                    out.writeLong(size.getValue());
+                }
+
+                out.writeInt(entries.size());
+                for(Map.Entry<String, Location> entry : entries) {
+                    Location location = entry.getValue();
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    byte[] validators = location.validators.encode().getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(key.length);
+                    out.write(key);
+                    out.writeInt(location.segment.id);
+                    out.writeLong(location.offset);
+                    out.writeInt(location.length);
+                    out.writeInt(location.contentsOffset);
+                    out.writeByte(location.flags);
+                    out.writeLong(location.createdAt);
+                    out.writeInt(location.ttl);
+                    out.writeShort(validators.length);
+                    out.write(validators);
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(bytes.toByteArray());
+                out.writeInt((int)crc.getValue());
+                out.flush();
+
+                // Erst vollständig schreiben, dann ersetzen: ein Absturz lässt den alten Index stehen
+                Path temporary = new File(dir, INDEX_NAME + ".tmp").toPath();
+                Files.write(temporary, bytes.toByteArray());
+                Files.move(temporary, new File(dir, INDEX_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Metrics.increment("cache_store_index_writes_total");
+            }
+            catch(IOException e) {
+                Program.log("Failed to write cache index: " + e);
+            }
+        }
+    }
+
+    // Mit expected wird nur übernommen, wenn der Index noch auf expected zeigt (beim Kompaktieren)
+    private synchronized void append(String key, ByteBuffer record, int contentsOffset, byte flags, long createdAt, int ttl, Validators validators, Location expected) throws IOException {
+        if(expected != null && index.get(key) != expected) {
+            return; // Inzwischen neu geschrieben oder verworfen
+        }
+
+        int length = record.remaining();
+        if(active == null || (active.size > 0 && active.size + length > segmentBytes)) {
+            if(active != null) { // Hält den Teil klein, der beim Start nachgelesen werden muss
+                new Thread(this::writeIndex, "cache-index").start();
+            }
+            active = createSegment();
+        }
+
+        long offset = active.size;
+        while(record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size += length;
+
+        Location location = new Location(active, offset, length, contentsOffset, flags, createdAt, ttl, validators);
+        location.segment.liveBytes.addAndGet(length);
+        Location previous = index.put(key, location);
+        if(previous != null) {
+            previous.segment.liveBytes.addAndGet(-previous.length);
+        }
+    }
+
+    private Segment createSegment() throws IOException {
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+
+        int id = nextSegmentId++;
+        Segment segment = new Segment(id, new File(dir, "segment-" + id + ".log"));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    // Lädt den gespeicherten Index und liest nur die Einträge aus den Segmenten, die danach angehängt wurden.
+    // Ohne gültigen Index werden alle Segmente der Reihe nach gelesen, spätere Einträge ersetzen frühere.
+    // Ein unvollständiger Eintrag am Ende (Absturz beim Schreiben) wird abgeschnitten.
+    // Löscht die Dateien aus der Zeit mit einer Datei pro Url
+    public void deleteLegacyFiles() {
+        File[] files = dir.listFiles();
+        if(files == null) {
+            return;
+        }
+
+        for(File file : files) {
+            if(file.getName().endsWith(".gmi") || file.getName().endsWith(".meta")) {
+                file.delete();
+            }
+        }
+    }
+
+    // Liest die vorhandenen Segmente ein, ohne recover() ist der Store leer
+    public synchronized void recover() throws IOException {
+        long start = System.nanoTime();
+        File[] files = dir.listFiles();
+        if(files == null) {
+            return;
+        }
+
+        for(File file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if(matcher.matches()) {
+                int id = Integer.parseInt(matcher.group(1));
+                Segment segment = new Segment(id, file);
+                segment.size = segment.channel.size();
+                segments.put(id, segment);
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+            }
+        }
+        if(!segments.isEmpty()) {
+            active = segments.lastEntry().getValue();
+        }
+
+        Map<Integer, Long> covered = loadIndex();
+        long scanned = 0;
+        for(Segment segment : segments.values()) {
+            long offset = covered.getOrDefault(segment.id, 0L);
+            if(offset > segment.size) { // Datei passt nicht zum Index, Segment komplett neu einlesen
+                index.values().removeIf(location -> location.segment == segment);
+                offset = 0;
+            }
+            scanned += segment.size - offset;
+
+            while(offset < segment.size) {
+                Location location = readRecord(segment, offset);
+                if(location == null) {
+                    Program.log("Truncating damaged cache segment " + segment.file + " at " + offset);
+                    segment.channel.truncate(offset);
+                    segment.size = offset;
+                    break;
+                }
+
+                index.put(location.key, location);
+                offset += location.length;
+            }
+        }
+
+        for(Location location : index.values()) {
+            location.segment.liveBytes.addAndGet(location.length);
+        }
+        Metrics.add("cache_store_recovery_scanned_bytes_total", scanned);
+        Metrics.add("cache_store_recovery_nanos_total", System.nanoTime() - start);
+    }
+
+    // Erfasste Länge pro Segment, leer wenn kein gültiger Index vorhanden ist
+    private Map<Integer, Long> loadIndex() {
+        HashMap<Integer, Long> covered = new HashMap<Integer, Long>();
+        File indexFile = new File(dir, INDEX_NAME);
+        if(!indexFile.isFile()) {
+            return covered;
+        }
+
+        try {
+            byte[] data = Files.readAllBytes(indexFile.toPath());
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, Math.max(0, data.length - 4));
+            if(data.length < 4 || buffer.getInt(data.length - 4) != (int)crc.getValue() || buffer.getInt() != INDEX_MAGIC || buffer.getInt() != INDEX_VERSION) {
+                throw new IOException("Damaged or outdated index");
+            }
+
+            long compactedAt = buffer.getLong();
+            int nextId = buffer.getInt();
+            HashMap<Integer, Long> sizes = new HashMap<Integer, Long>();
+            for(int i = buffer.getInt(); i > 0; i--) {
+                sizes.put(buffer.getInt(), buffer.getLong());
+            }
+
+            HashMap<String, Location> loaded = new HashMap<String, Location>();
+            for(int i = buffer.getInt(); i > 0; i--) {
+                byte[] key = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(key);
+                Segment segment = segments.get(buffer.getInt());
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                int contentsOffset = buffer.getInt();
+                byte flags = buffer.get();
+                long createdAt = buffer.getLong();
+                int ttl = buffer.getInt();
+                byte[] validators = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(validators);
+
+                if(segment != null && sizes.containsKey(segment.id)) { // Gelöschte Segmente überspringen
+                    loaded.put(new String(key, StandardCharsets.UTF_8), new Location(segment, offset, length, contentsOffset, flags, createdAt, ttl, Validators.decode(new String(validators, StandardCharsets.UTF_8))));
+                }
+            }
+
+            index.putAll(loaded);
+            lastCompaction.set(compactedAt);
+            nextSegmentId = Math.max(nextSegmentId, nextId);
+            for(Map.Entry<Integer, Long> size : sizes.entrySet()) {
+                if(segments.containsKey(size.getKey())) {
+                    covered.put(size.getKey(), size.getValue());
+                }
+            }
+        }
+        catch(IOException | RuntimeException e) {
+            Program.log("Ignoring cache index, reading all segments: " + e);
+        }
+        return covered;
+    }
+
+    private Location readRecord(Segment segment, long offset) throws IOException {
+        if(segment.size - offset < HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer header = segment.read(offset, HEADER_SIZE);
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if(length < 1 + 2 + 8 + 4 + 2 || segment.size - offset - HEADER_SIZE < length) {
+            return null;
+        }
+
+        ByteBuffer body = segment.read(offset + HEADER_SIZE, length);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, length);
+        if((int)crc.getValue() != checksum) {
+            return null;
+        }
+
+        try {
+            byte flags = body.get();
+            byte[] key = new byte[body.getShort() & 0xFFFF];
+            body.get(key);
+            long createdAt = body.getLong();
+            int ttl = body.getInt();
+            byte[] validators = new byte[body.getShort() & 0xFFFF];
+            body.get(validators);
+
+            Location location = new Location(segment, offset, HEADER_SIZE + length, HEADER_SIZE + body.position(), flags, createdAt, ttl, Validators.decode(new String(validators, StandardCharsets.UTF_8)));
+            location.key = new String(key, StandardCharsets.UTF_8);
+            return location;
+        }
+        catch(RuntimeException _e) { // Längen passen nicht zum Eintrag
+            return null;
+        }
+    }
+
+    private synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private synchronized long getTotalBytes() {
+        long total = 0;
+        for(Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        return total;
+    }
+
+    private static class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        final AtomicLong liveBytes = new AtomicLong(); // Bytes der Einträge, auf die der Index noch zeigt
+        long size = 0; // Nur mit Lock auf den CacheStore geändert
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        // Positionelles Lesen, mehrere Threads können gleichzeitig lesen
+        ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        void delete() {
+            try {
+                channel.close();
+            }
+            catch(IOException _e) {}
+            file.delete();
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final long offset;
+        final int length; // Ganzer Eintrag mit Kopf
+        final int contentsOffset; // Beginn des Inhalts im Eintrag
+        final byte flags;
+        final long createdAt;
+        final int ttl;
+        final Validators validators;
+        String key; // Nur beim Einlesen gesetzt
+
+        Location(Segment segment, long offset, int length, int contentsOffset, byte flags, long createdAt, int ttl, Validators validators) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.contentsOffset = contentsOffset;
+            this.flags = flags;
+            this.createdAt = createdAt;
+            this.ttl = ttl;
+            this.validators = validators;
+        }
+    }
+}
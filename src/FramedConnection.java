@@ -0,0 +1,186 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Gerahmtes Protokoll für Clients, die die Verbindung offen halten. Die Seite kommt direkt in der Antwort zurück
+// statt über unique_file_path, und auf einer Verbindung können mehrere Anfragen gleichzeitig laufen.
+//
+// Der Client beginnt mit HANDSHAKE, der Server antwortet mit denselben vier Bytes (oder nur mit einem Exit-Code,
+// wenn er überlastet ist). 0xFF kommt in UTF-8 nicht vor, das alte Format kann also nie so beginnen.
+// Danach folgen Frames, alle Zahlen big endian:
+//   Anfrage: [u32 Länge][u32 Anfrage-Id][Argumente wie im alten Format, jeweils mit NUL abgeschlossen]
+//   Antwort: [u32 Länge][u32 Anfrage-Id][u8 Exit-Code][Seite bzw. Fehlermeldung in UTF-8]
+// Die Länge zählt alle Bytes nach dem Längenfeld. Antworten kommen in der Reihenfolge, in der die Anfragen fertig
+// werden, der Client ordnet sie über die Anfrage-Id zu. Schließt der Client seine Seite, werden die offenen
+// Anfragen noch beantwortet und dann wird die Verbindung geschlossen.
+//
+// Beim blockierenden Transport liest pro Verbindung ein eigener Thread, die Anfragen selbst laufen im WorkerPool.
+// Wie viele Verbindungen gleichzeitig offen sein dürfen, begrenzt "max_framed_connections", darüber wird wie bei
+// einem vollen WorkerPool nur der Exit-Code 41 gesendet.
+class FramedConnection implements Runnable {
+    static final int MARKER = 0xFF;
+    static final byte[] HANDSHAKE = { (byte)MARKER, 'T', 'M', 1 }; // Marker, "TM", Version
+    static final int MAX_REQUEST_SIZE = 64 * 1024;
+    private static final int MAX_CONNECTIONS = Settings.getInt("max_framed_connections", 64);
+    private static final AtomicInteger active = new AtomicInteger();
+
+    static {
+        Metrics.registerGauge("framed_connections_active", () -> active.get());
+    }
+
+    private final Socket client;
+    private final WorkerPool workers;
+    private DataOutputStream writer;
+    private int pendingRequests = 0;
+    private boolean readerDone = false;
+    private boolean closed = false;
+
+    public FramedConnection(Socket client, WorkerPool workers) {
+        this.client = client;
+        this.workers = workers;
+    }
+
+    // Das erste Byte wurde schon gelesen, der Rest läuft in einem eigenen Thread, damit die Verbindung keinen Worker belegt
+    public void start() {
+        if(active.incrementAndGet() > MAX_CONNECTIONS) { // Überlastet
+            active.decrementAndGet();
+            Metrics.increment("framed_connections_rejected_total");
+            reject(WorkerPool.getRejectionExitCode());
+            return;
+        }
+
+        Thread reader = new Thread(this, "framed-connection");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public void run() {
+        Metrics.increment("framed_connections_total");
+        try {
+            DataInputStream reader = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            writer = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+
+            byte[] handshake = new byte[HANDSHAKE.length];
+            reader.readFully(handshake, 1, HANDSHAKE.length - 1);
+            if(!isValidHandshake(handshake, 0)) {
+                throw new IOException("Unsupported protocol version");
+            }
+            synchronized(this) {
+                writer.write(HANDSHAKE);
+                writer.flush();
+            }
+
+            while(true) {
+                int length;
+                try {
+                    length = reader.readInt();
+                }
+                catch(EOFException _e) { // Client sendet keine Anfragen mehr
+                    break;
+                }
+                if(length < 4 || length > MAX_REQUEST_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+
+                int requestId = reader.readInt();
+                byte[] payload = new byte[length - 4];
+                reader.readFully(payload);
+                dispatch(requestId, ServerThread.stringArrayFromCEncoding(payload, 0, payload.length));
+            }
+        }
+        catch(IOException e) {
+            Program.log("Framed connection: " + e);
+            close();
+            return;
+        }
+
+        synchronized(this) {
+            readerDone = true;
+            if(pendingRequests == 0) {
+                close();
+            }
+        }
+    }
+
+    private void dispatch(int requestId, String[] args) {
+        Metrics.increment("framed_requests_total");
+        synchronized(this) {
+            pendingRequests++;
+        }
+
+        try {
+            // Der Worker startet die Anfrage nur, die Antwort wird geschrieben, sobald die Seite fertig ist
+            workers.execute(() -> Program.executeAsync(args).thenAccept(result -> respond(requestId, result)));
+        }
+        catch(RejectedExecutionException _e) { // Überlastet
+            respond(requestId, new ActionResult(WorkerPool.getRejectionExitCode(), "Server overloaded"));
+        }
+    }
+
+    private synchronized void respond(int requestId, ActionResult result) {
+        try {
+            writer.write(encodeResponse(requestId, result));
+            writer.flush();
+        }
+        catch(IOException e) {
+            Program.log("Framed connection: " + e);
+            close();
+        }
+
+        pendingRequests--;
+        if(readerDone && pendingRequests == 0) {
+            close();
+        }
+    }
+
+    static byte[] encodeResponse(int requestId, ActionResult result) {
+        byte[] body = result.body.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(4 + 4 + 1 + body.length);
+        frame.putInt(4 + 1 + body.length);
+        frame.putInt(requestId);
+        frame.put((byte)result.exitCode);
+        frame.put(body);
+        return frame.array();
+    }
+
+    static boolean isValidHandshake(byte[] buffer, int offset) { // Prüft die drei Bytes nach dem Marker
+        for(int i = 1; i < HANDSHAKE.length; i++) {
+            if(buffer[offset + i] != HANDSHAKE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reject(int exitCode) {
+        try {
+            client.getOutputStream().write((byte)exitCode);
+            client.close();
+        }
+        catch(IOException e) {
+            Program.log(e.toString());
+        }
+    }
+
+    private synchronized void close() { // Wird auch nach einem Fehler beim Schreiben noch einmal aufgerufen
+        if(closed) {
+            return;
+        }
+        closed = true;
+        active.decrementAndGet();
+
+        try {
+            client.close();
+        }
+        catch(IOException _e) {}
+    }
+}
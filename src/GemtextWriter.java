@@ -0,0 +1,85 @@
+// Baut eine Gemtext-Seite in einem einzigen, vorher passend dimensionierten Puffer auf,
+// statt für jede Zeile einen neuen String zu erzeugen.
+class GemtextWriter {
+    private final StringBuilder page;
+
+    public GemtextWriter(int expectedLength) {
+        this.page = new StringBuilder(expectedLength);
+    }
+
+    public GemtextWriter heading(String prefix, String text) { // prefix: "#", "##", "###" oder mit Leerzeichen
+        page.append(prefix).append(text).append('\n');
+        return this;
+    }
+
+    public GemtextWriter link(String url, String text) {
+        page.append("=>").append(url).append(' ').append(text).append('\n');
+        return this;
+    }
+
+    public GemtextWriter line(String text) {
+        page.append(text).append('\n');
+        return this;
+    }
+
+    public GemtextWriter htmlLine(String prefix, String html) { // Tags werden entfernt, Links als eigene Zeilen danach angehängt
+        page.append(prefix);
+        boolean hasLinks = TagStripper.appendText(page, html, 0, html.length());
+        page.append('\n');
+        if(hasLinks) {
+            TagStripper.appendLinks(page, html);
+        }
+        return this;
+    }
+
+    public GemtextWriter htmlText(String html) { // Ohne Tags, Links und Zeilenumbruch
+        TagStripper.appendText(page, html, 0, html.length());
+        return this;
+    }
+
+    public GemtextWriter text(String text) { // Ohne Zeilenumbruch
+        page.append(text);
+        return this;
+    }
+
+    public GemtextWriter text(int number) {
+        page.append(number);
+        return this;
+    }
+
+    public GemtextWriter date(ApiDate date) { // yyyy-MM-dd
+        padded(date.year(), 4).append('-');
+        padded(date.month(), 2).append('-');
+        padded(date.day(), 2);
+        return this;
+    }
+
+    public GemtextWriter time(ApiDate date) { // HH:mm
+        padded(date.hour(), 2).append(':');
+        padded(date.minute(), 2);
+        return this;
+    }
+
+    public GemtextWriter newline() {
+        page.append('\n');
+        return this;
+    }
+
+    private StringBuilder padded(int number, int width) { // Mit führenden Nullen
+        for(int limit = 10; width > 1; width--, limit *= 10) {
+            if(number < limit) {
+                page.append('0');
+            }
+        }
+        return page.append(number);
+    }
+
+    public int length() {
+        return page.length();
+    }
+
+    @Override
+    public String toString() {
+        return page.toString();
+    }
+}
\ No newline at end of file
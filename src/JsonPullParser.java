@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.io.Reader;
+import org.json.JSONException;
+
+// Liest JSON Token für Token direkt aus dem Stream, ohne vorher alles als String zu puffern.
+// Werte, die nicht gebraucht werden, können mit skipValue() übersprungen werden, ohne dass Objekte dafür erstellt werden.
+class JsonPullParser {
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3; // Nach einem Namen, vor dem ':'
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+
+    private final StringBuilder text = new StringBuilder(); // Inhalt des letzten NAME, STRING oder NUMBER Tokens
+    private boolean skipping = false;
+    private Token peeked = null; // Schon gelesen von peek(), wird vom nächsten next() geliefert
+
+    public JsonPullParser(Reader reader) {
+        this.reader = reader;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public Token next() throws IOException {
+        if(peeked != null) {
+            Token token = peeked;
+            peeked = null;
+            return token;
+        }
+
+        int context = stack[stackSize - 1];
+        int c = nextNonWhitespace();
+
+        switch(context) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return readValue(c);
+            case NONEMPTY_DOCUMENT:
+                if(c == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                throw syntaxError("Unexpected data after the document");
+            case EMPTY_ARRAY:
+                if(c == ']') {
+                    stackSize--;
+                    return Token.END_ARRAY;
+                }
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                return readValue(c);
+            case NONEMPTY_ARRAY:
+                if(c == ']') {
+                    stackSize--;
+                    return Token.END_ARRAY;
+                }
+                expect(c, ',');
+                return readValue(nextNonWhitespace());
+            case EMPTY_OBJECT:
+                if(c == '}') {
+                    stackSize--;
+                    return Token.END_OBJECT;
+                }
+                return readName(c);
+            case NONEMPTY_OBJECT:
+                if(c == '}') {
+                    stackSize--;
+                    return Token.END_OBJECT;
+                }
+                expect(c, ',');
+                return readName(nextNonWhitespace());
+            case DANGLING_NAME:
+                expect(c, ':');
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return readValue(nextNonWhitespace());
+            default:
+                throw syntaxError("Invalid parser state");
+        }
+    }
+
+    public Token peek() throws IOException { // Das nächste Token, ohne es zu verbrauchen
+        if(peeked == null) {
+            peeked = next();
+        }
+        return peeked;
+    }
+
+    public String getText() { // Für NAME, STRING und NUMBER
+        return text.toString();
+    }
+
+    // Die folgenden Methoden sind für ModelReader: ein Wert eines erwarteten Typs, sonst eine JSONException
+
+    public void beginObject() throws IOException {
+        if(!beginOptionalObject()) {
+            throw syntaxError("Expected an object but found null");
+        }
+    }
+
+    public boolean beginOptionalObject() throws IOException { // false bei null
+        return begin(Token.BEGIN_OBJECT, "an object");
+    }
+
+    public boolean beginOptionalArray() throws IOException { // false bei null
+        return begin(Token.BEGIN_ARRAY, "an array");
+    }
+
+    public String nextName() throws IOException { // null am Ende des Objekts
+        Token token = next();
+        if(token == Token.END_OBJECT) {
+            return null;
+        }
+        if(token != Token.NAME) {
+            throw syntaxError("Expected a name");
+        }
+        return getText();
+    }
+
+    public boolean hasNextElement() throws IOException { // Verbraucht am Ende des Arrays das ']'
+        if(peek() == Token.END_ARRAY) {
+            next();
+            return false;
+        }
+        return true;
+    }
+
+    public String nextString() throws IOException { // Auch Zahlen und Wahrheitswerte als Text, null bei null
+        Token token = next();
+        switch(token) {
+            case STRING:
+            case NUMBER:
+                return getText();
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            case NULL:
+                return null;
+            default:
+                throw syntaxError("Expected a string but found " + token);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        String number = nextString();
+        try {
+            return Integer.parseInt(number);
+        }
+        catch(NumberFormatException e) {
+            throw syntaxError("Expected an integer but found " + number);
+        }
+    }
+
+    public void endDocument() throws IOException {
+        if(next() != Token.END_DOCUMENT) {
+            throw syntaxError("Unexpected data after the document");
+        }
+    }
+
+    public void skipValue() throws IOException { // Überspringt den nächsten Wert inklusive aller Kinder
+        skipping = true;
+        try {
+            int depth = 0;
+            do {
+                Token token = next();
+                if(token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+                    depth++;
+                }
+                else if(token == Token.END_OBJECT || token == Token.END_ARRAY) {
+                    depth--;
+                }
+                else if(token == Token.END_DOCUMENT) {
+                    throw syntaxError("Unexpected end of document");
+                }
+            } while(depth > 0);
+        }
+        finally {
+            skipping = false;
+        }
+    }
+
+    private boolean begin(Token expected, String description) throws IOException {
+        Token token = next();
+        if(token == Token.NULL) {
+            return false;
+        }
+        if(token != expected) {
+            throw syntaxError("Expected " + description + " but found " + token);
+        }
+        return true;
+    }
+
+    private Token readName(int c) throws IOException {
+        expect(c, '"');
+        readString();
+        stack[stackSize - 1] = DANGLING_NAME;
+        return Token.NAME;
+    }
+
+    private Token readValue(int c) throws IOException {
+        switch(c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString();
+                return Token.STRING;
+            case 't':
+                expectLiteral("rue");
+                return Token.TRUE;
+            case 'f':
+                expectLiteral("alse");
+                return Token.FALSE;
+            case 'n':
+                expectLiteral("ull");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char)c + "'");
+        }
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while(true) {
+            // Normale Zeichen blockweise übernehmen
+            int start = pos;
+            while(pos < limit) {
+                char c = buffer[pos];
+                if(c == '"' || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            if(!skipping) {
+                text.append(buffer, start, pos - start);
+            }
+
+            if(pos == limit) {
+                if(!fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                continue;
+            }
+
+            char c = buffer[pos++];
+            if(c == '"') {
+                return;
+            }
+
+            char escaped = readEscape();
+            if(!skipping) {
+                text.append(escaped);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch(c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for(int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if(digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = value * 16 + digit;
+                }
+                return (char)value;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private void readNumber(int first) throws IOException {
+        text.setLength(0);
+        text.append((char)first);
+        while(true) {
+            if(pos == limit && !fill()) {
+                return;
+            }
+            char c = buffer[pos];
+            if((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                text.append(c);
+                pos++;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for(int i = 0; i < rest.length(); i++) {
+            if(read() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private void expect(int c, char expected) {
+        if(c != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    private void push(int context) {
+        if(stackSize == stack.length) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = context;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while(true) {
+            int c = read();
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private int read() throws IOException { // -1 am Ende
+        if(pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int count = reader.read(buffer, 0, buffer.length);
+        if(count <= 0) {
+            return false;
+        }
+        pos = 0;
+        limit = count;
+        return true;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at stack depth " + stackSize);
+    }
+}
@@ -0,0 +1,109 @@
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Erste Stufe des Caches: die zuletzt verwendeten Seiten bleiben im Speicher,
+// begrenzt durch eine Größe in Bytes. Die zweite Stufe ist der CacheStore im Cache-Ordner.
+class MemoryCache {
+    private final long maxBytes;
+    private final int maxAge;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true); // Zugriffsreihenfolge für LRU
+    private long currentBytes = 0;
+
+    public MemoryCache(long maxBytes, int maxAge) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+
+        Metrics.registerGauge("cache_memory_bytes", () -> getCurrentBytes());
+        Metrics.registerGauge("cache_memory_entries", () -> getEntryCount());
+    }
+
+    public synchronized CachedPage get(String key) { // null, wenn Zeit abgelaufen oder nicht vorhanden
+        Entry entry = entries.get(key);
+        if(entry == null) {
+            Metrics.increment("cache_memory_misses_total");
+            return null;
+        }
+
+        if(isExpired(entry, Instant.now().getEpochSecond())) {
+            remove(key);
+            Metrics.increment("cache_memory_misses_total");
+            return null;
+        }
+
+        Metrics.increment("cache_memory_hits_total");
+        return entry.page;
+    }
+
+    public synchronized void put(String key, CachedPage page) {
+        Entry entry = new Entry(page, estimateSize(key, page));
+        if(entry.size > maxBytes) {
+            remove(key); // Passt nicht in den Cache, alte Version darf aber auch nicht bleiben
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if(previous != null) {
+            currentBytes -= previous.size;
+        }
+        currentBytes += entry.size;
+
+        evict();
+    }
+
+    public synchronized void remove(String key) {
+        Entry previous = entries.remove(key);
+        if(previous != null) {
+            currentBytes -= previous.size;
+        }
+    }
+
+    public synchronized void removeExpired() {
+        long currentUnixTime = Instant.now().getEpochSecond();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if(isExpired(entry, currentUnixTime)) {
+                currentBytes -= entry.size;
+                iterator.remove();
+                Metrics.increment("cache_memory_evictions_total");
+            }
+        }
+    }
+
+    private synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    private synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); // Älteste Zugriffe zuerst
+        while(currentBytes > maxBytes && iterator.hasNext()) {
+            currentBytes -= iterator.next().getValue().size;
+            iterator.remove();
+            Metrics.increment("cache_memory_evictions_total");
+        }
+    }
+
+    private boolean isExpired(Entry entry, long currentUnixTime) {
+        return entry.page.createdAt + maxAge < currentUnixTime;
+    }
+
+    private static long estimateSize(String key, CachedPage page) {
+        return 2L * key.length() + page.estimatedSize() + 64; // UTF-16 plus Verwaltungsaufwand
+    }
+
+    private static class Entry {
+        final CachedPage page;
+        final long size;
+
+        Entry(CachedPage page, long size) {
+            this.page = page;
+            this.size = size;
+        }
+    }
+}
\ No newline at end of file
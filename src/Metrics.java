@@ -0,0 +1,300 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Zähler, Messwerte (Gauges) und Latenz-Histogramme des Daemons. Eine Reihe ist ein Name mit optionalen Labels
+// ("cache_requests_total{endpoint=\"getTopic\",result=\"hit\"}", siehe series()). Ausgegeben wird im Textformat
+// von Prometheus: regelmäßig nach metrics.txt ("metrics_dump_interval") und, wenn "metrics_port" gesetzt ist,
+// unter http://127.0.0.1:<port>/metrics.
+class Metrics {
+    private static final String METRICS_FILE = "metrics.txt";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private static final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long amount) {
+        counters.computeIfAbsent(name, _k -> new LongAdder()).add(amount);
+    }
+
+    public static long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public static void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    // Dauer in Nanosekunden, ausgegeben in Sekunden (der Name sollte deshalb auf "_seconds" enden)
+    public static void recordNanos(String name, long nanos) {
+        histograms.computeIfAbsent(name, _k -> new Histogram()).record(nanos);
+    }
+
+    // Name mit Labels, labels sind abwechselnd Name und Wert: series("api_responses_total", "endpoint", "news", "status", "200").
+    // Die Werte sollten aus einer festen Menge kommen (Aktionen, Endpunkte, Exit-Codes), jede Kombination ist eine eigene Reihe.
+    public static String series(String name, String... labels) {
+        if(labels.length == 0) {
+            return name;
+        }
+
+        StringBuilder series = new StringBuilder(name).append('{');
+        for(int i = 0; i + 1 < labels.length; i += 2) {
+            if(i > 0) {
+                series.append(',');
+            }
+            series.append(labels[i]).append("=\"");
+            appendEscaped(series, labels[i + 1]);
+            series.append('"');
+        }
+        return series.append('}').toString();
+    }
+
+    // Prometheus-Textformat (Version 0.0.4): Reihen nach Namen gruppiert, für jeden Namen eine "# TYPE" Zeile.
+    // Histogramme werden als summary mit Quantilen ausgegeben, quantile="1" ist der größte gemessene Wert.
+    public static String render() {
+        TreeMap<String, Family> families = new TreeMap<String, Family>(); // Sortiert, damit die Ausgabe stabil bleibt
+        for(Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            String name = familyOf(counter.getKey());
+            family(families, name, name.endsWith("_total") ? "counter" : "untyped").add(counter.getKey(), counter.getValue().sum());
+        }
+        for(Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            family(families, familyOf(gauge.getKey()), "gauge").add(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        for(Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            family(families, familyOf(histogram.getKey()), "summary").addSummary(histogram.getKey(), histogram.getValue());
+        }
+
+        StringBuilder text = new StringBuilder();
+        for(Family family : families.values()) {
+            text.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for(String lines : family.series.values()) {
+                text.append(lines);
+            }
+        }
+        return text.toString();
+    }
+
+    public static void startPeriodicDump(int intervalSeconds) {
+        if(intervalSeconds <= 0) {
+            return;
+        }
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(Metrics::dump, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Nur auf 127.0.0.1, die Werte sind nicht für Besucher des Servers gedacht. Ein belegter Port beendet den Daemon nicht.
+    public static void startHttpEndpoint(int port) {
+        if(port <= 0) {
+            return;
+        }
+
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try(OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-http");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            Program.log("Serving metrics on http://127.0.0.1:" + port + "/metrics");
+        }
+        catch(IOException e) {
+            Program.log("Failed to serve metrics on port " + port + ": " + e);
+        }
+    }
+
+    private static void dump() {
+        try {
+            FileWriter fw = new FileWriter(METRICS_FILE); // Überschreibt den letzten Stand
+            fw.write(render());
+            fw.close();
+        }
+        catch(IOException e) {
+            Program.log("Failed to write metrics " + e);
+        }
+    }
+
+    private static Family family(TreeMap<String, Family> families, String name, String type) {
+        return families.computeIfAbsent(name, _k -> new Family(name, type));
+    }
+
+    private static String familyOf(String series) {
+        int labelsStart = series.indexOf('{');
+        return labelsStart < 0 ? series : series.substring(0, labelsStart);
+    }
+
+    private static void appendEscaped(StringBuilder text, String value) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            }
+            else if(c == '\n') {
+                text.append("\\n");
+            }
+            else {
+                text.append(c);
+            }
+        }
+    }
+
+    // Alle Reihen eines Namens, nach Reihe sortiert
+    private static class Family {
+        final String name;
+        final String type;
+        final TreeMap<String, String> series = new TreeMap<String, String>(); // Reihe -> ihre Zeilen
+
+        Family(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        void add(String series, long value) {
+            this.series.put(series, series + " " + value + "\n");
+        }
+
+        void addSummary(String series, Histogram histogram) {
+            String labels = series.length() > name.length() ? series.substring(name.length() + 1, series.length() - 1) : "";
+            String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+
+            StringBuilder lines = new StringBuilder();
+            for(double quantile : QUANTILES) {
+                lines.append(name).append('{').append(labelPrefix).append("quantile=\"").append(quantile).append("\"} ").append(seconds(histogram.valueAt(quantile))).append('\n');
+            }
+            lines.append(name).append('{').append(labelPrefix).append("quantile=\"1\"} ").append(seconds(histogram.max())).append('\n');
+            lines.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.sum())).append('\n');
+            lines.append(name).append("_count").append(suffix).append(' ').append(histogram.count()).append('\n');
+            this.series.put(series, lines.toString());
+        }
+
+        private static String seconds(long nanos) {
+            return Double.toString(nanos / 1e9);
+        }
+    }
+}
+
+// Zählt Werte (Nanosekunden) in logarithmischen Bereichen mit je 16 linearen Unterteilungen, wie HdrHistogram:
+// Jede Zweierpotenz wird in 16 gleich große Buckets geteilt, ein Quantil ist also höchstens etwa 6 % zu hoch,
+// egal ob es um Mikrosekunden oder Sekunden geht. Die meisten Anfragen landen im selben Bucket (Cache-Treffer),
+// deshalb ist jeder Bucket ein LongAdder: Threads zählen ohne Lock und ohne sich gegenseitig auszubremsen.
+class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<LongAdder>((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS); // Erst bei Bedarf angelegt
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        bucket(indexOf(value)).increment();
+        sum.add(value);
+
+        long currentMax;
+        while(value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {} // Geschrieben wird nur bei einem neuen Maximum
+    }
+
+    public long count() {
+        long count = 0;
+        for(int i = 0; i < buckets.length(); i++) {
+            LongAdder bucket = buckets.get(i);
+            count += bucket == null ? 0 : bucket.sum();
+        }
+        return count;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // Obere Grenze des Buckets, in dem das Quantil liegt, 0 ohne Werte
+    public long valueAt(double quantile) {
+        long[] snapshot = new long[buckets.length()];
+        long total = 0;
+        for(int i = 0; i < snapshot.length; i++) { // Während des Lesens kann weiter aufgezeichnet werden, deshalb selbst zählen
+            LongAdder bucket = buckets.get(i);
+            snapshot[i] = bucket == null ? 0 : bucket.sum();
+            total += snapshot[i];
+        }
+        if(total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(quantile * total));
+        long seen = 0;
+        for(int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if(seen >= rank) {
+                return Math.min(upperBoundOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    private LongAdder bucket(int index) {
+        LongAdder bucket = buckets.get(index);
+        if(bucket == null) {
+            buckets.compareAndSet(index, null, new LongAdder());
+            bucket = buckets.get(index);
+        }
+        return bucket;
+    }
+
+    static int indexOf(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int)value; // Die ersten 16 Werte exakt
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long)(SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
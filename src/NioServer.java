@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Nicht blockierender Server für "transport": "nio". Ein Thread nimmt alle Verbindungen an, liest die Anfragen
+// aus den Puffern und schreibt die Antworten. Nur fertig gelesene Anfragen gehen an den WorkerPool, ein langsamer
+// Client belegt so keinen Worker. Beide Protokolle (altes Format und FramedConnection) werden unterstützt.
+class NioServer {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final WorkerPool workers;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE); // Nur im Selector-Thread benutzt
+    private final ConcurrentLinkedQueue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<NioConnection>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    public NioServer(int port, WorkerPool workers) throws IOException {
+        this.workers = workers;
+        this.selector = Selector.open();
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        Metrics.registerGauge("nio_connections_open", () -> openConnections.get());
+    }
+
+    public void run() {
+        while(true) {
+            try {
+                selector.select();
+            }
+            catch(IOException e) {
+                Program.log("Selector failed: " + e);
+                continue;
+            }
+
+            NioConnection connection;
+            while((connection = pendingWrites.poll()) != null) { // Antworten, die die Worker fertiggestellt haben
+                connection.flush();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if(key.isAcceptable()) {
+                        accept((ServerSocketChannel)key.channel());
+                        continue;
+                    }
+
+                    connection = (NioConnection)key.attachment();
+                    if(key.isReadable()) {
+                        connection.read();
+                    }
+                    if(key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+                catch(IOException | CancelledKeyException e) {
+                    if(key.attachment() != null) {
+                        ((NioConnection)key.attachment()).close();
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while((channel = server.accept()) != null) {
+            Metrics.increment("connections_accepted_total");
+            CacheHandler.asyncHandleCacheClear(); // Falls Dateien aus dem Cache gelöscht werden sollen, starte einen neuen Thread
+
+            channel.configureBlocking(false);
+            NioConnection connection = new NioConnection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            openConnections.incrementAndGet();
+        }
+    }
+
+    private class NioConnection {
+        private static final int UNKNOWN = 0, LEGACY = 1, HANDSHAKE = 2, FRAMED = 3;
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private int protocol = UNKNOWN;
+
+        // Gelesene, noch nicht verarbeitete Bytes (nur im Selector-Thread)
+        private byte[] input = new byte[1024];
+        private int inputSize = 0;
+        private boolean inputDone = false; // Keine weiteren Anfragen mehr
+
+        // Von Workern und dem Selector-Thread benutzt
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+        private int pendingRequests = 0;
+        private boolean closed = false;
+
+        NioConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            boolean endOfStream = false;
+            while(true) {
+                readBuffer.clear();
+                int bytesRead = channel.read(readBuffer);
+                if(bytesRead <= 0) {
+                    endOfStream = bytesRead < 0;
+                    break;
+                }
+
+                readBuffer.flip();
+                append(readBuffer);
+                if(protocol != LEGACY) {
+                    parseFrames();
+                }
+                if(inputDone) {
+                    break;
+                }
+            }
+
+            // Wie ServerThread.readLegacyRequest(): vollständig, wenn die Daten mit NUL enden und nichts mehr ansteht
+            if(protocol == LEGACY && !inputDone && (endOfStream || input[inputSize - 1] == 0)) {
+                dispatchLegacy(ServerThread.stringArrayFromCEncoding(input, inputSize));
+            }
+            if(endOfStream || inputDone) {
+                inputDone = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                closeIfDone();
+            }
+        }
+
+        private void append(ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            if(inputSize + length > input.length) {
+                // Im gerahmten Protokoll bleibt höchstens ein unvollständiger Frame plus ein gelesener Block übrig
+                int limit = protocol == LEGACY || protocol == UNKNOWN ? ServerThread.MAX_LEGACY_REQUEST_SIZE : FramedConnection.MAX_REQUEST_SIZE + 8 + READ_BUFFER_SIZE;
+                if(inputSize + length > limit) {
+                    throw new IOException("Request exceeds " + limit + " bytes");
+                }
+                input = Arrays.copyOf(input, Math.min(limit, Math.max(input.length * 2, inputSize + length)));
+            }
+            data.get(input, inputSize, length);
+            inputSize += length;
+
+            if(protocol == UNKNOWN) {
+                protocol = (input[0] & 0xFF) == FramedConnection.MARKER ? HANDSHAKE : LEGACY;
+            }
+        }
+
+        private void parseFrames() throws IOException {
+            int position = 0;
+            if(protocol == HANDSHAKE) {
+                if(inputSize < FramedConnection.HANDSHAKE.length) {
+                    return;
+                }
+                if(!FramedConnection.isValidHandshake(input, 0)) {
+                    throw new IOException("Unsupported protocol version");
+                }
+                Metrics.increment("framed_connections_total");
+                protocol = FRAMED;
+                position = FramedConnection.HANDSHAKE.length;
+                send(FramedConnection.HANDSHAKE.clone(), false);
+            }
+
+            while(inputSize - position >= 4) {
+                int length = ByteBuffer.wrap(input, position, 4).getInt();
+                if(length < 4 || length > FramedConnection.MAX_REQUEST_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if(inputSize - position - 4 < length) {
+                    break; // Frame noch unvollständig
+                }
+
+                int requestId = ByteBuffer.wrap(input, position + 4, 4).getInt();
+                dispatchFramed(requestId, ServerThread.stringArrayFromCEncoding(input, position + 8, length - 4));
+                position += 4 + length;
+            }
+
+            System.arraycopy(input, position, input, 0, inputSize - position);
+            inputSize -= position;
+        }
+
+        private void dispatchLegacy(String[] args) {
+            inputDone = true; // Im alten Format gibt es nur eine Anfrage pro Verbindung
+            synchronized(this) {
+                pendingRequests++;
+            }
+
+            try {
+                workers.execute(() -> Program.runAsync(args).thenAccept(exitCode -> send(new byte[] { (byte)(int)exitCode }, true)));
+            }
+            catch(RejectedExecutionException _e) { // Überlastet
+                send(new byte[] { (byte)WorkerPool.getRejectionExitCode() }, true);
+            }
+        }
+
+        private void dispatchFramed(int requestId, String[] args) {
+            Metrics.increment("framed_requests_total");
+            synchronized(this) {
+                pendingRequests++;
+            }
+
+            try {
+                workers.execute(() -> Program.executeAsync(args).thenAccept(result -> send(FramedConnection.encodeResponse(requestId, result), true)));
+            }
+            catch(RejectedExecutionException _e) { // Überlastet
+                send(FramedConnection.encodeResponse(requestId, new ActionResult(WorkerPool.getRejectionExitCode(), "Server overloaded")), true);
+            }
+        }
+
+        // Kann aus jedem Thread aufgerufen werden, geschrieben wird im Selector-Thread
+        private void send(byte[] data, boolean completesRequest) {
+            synchronized(this) {
+                if(closed) {
+                    return;
+                }
+                output.add(ByteBuffer.wrap(data));
+                if(completesRequest) {
+                    pendingRequests--;
+                }
+            }
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        void flush() {
+            try {
+                synchronized(this) {
+                    if(closed) {
+                        return;
+                    }
+                    while(!output.isEmpty()) {
+                        ByteBuffer buffer = output.peek();
+                        channel.write(buffer);
+                        if(buffer.hasRemaining()) {
+                            break; // Socket-Puffer voll, weiter bei OP_WRITE
+                        }
+                        output.poll();
+                    }
+
+                    int ops = key.interestOps();
+                    key.interestOps(output.isEmpty() ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE);
+                }
+                closeIfDone();
+            }
+            catch(IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        private void closeIfDone() {
+            boolean done;
+            synchronized(this) {
+                done = inputDone && pendingRequests == 0 && output.isEmpty();
+            }
+            if(done) {
+                close();
+            }
+        }
+
+        synchronized void close() {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            output.clear();
+            key.cancel();
+            try {
+                channel.close();
+            }
+            catch(IOException _e) {}
+            openConnections.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Komprimiert gerenderte Seiten für den CacheStore mit Deflate. Gemtext ist deutscher Fließtext und wird schon mit
+// Stufe 1 (am schnellsten) auf etwa ein Viertel der Größe gebracht. Deflater und Inflater werden pro Thread wiederverwendet,
+// weil das Anlegen (nativer zlib-Speicher) teurer ist als eine kleine Seite zu komprimieren.
+class PageCodec {
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<Deflater[]> deflaters = ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 1]);
+
+    // null, wenn die Seite dadurch nicht kleiner wird (dann unkomprimiert speichern)
+    public static byte[] compress(byte[] raw, int level) {
+        long start = System.nanoTime();
+        Deflater deflater = deflater(level);
+        deflater.setInput(raw);
+        deflater.finish();
+
+        byte[] buffer = new byte[raw.length];
+        int length = 0;
+        while(!deflater.finished() && length < buffer.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        boolean smaller = deflater.finished() && length < raw.length;
+        deflater.reset();
+
+        Metrics.add("cache_compress_nanos_total", System.nanoTime() - start);
+        if(!smaller) {
+            return null;
+        }
+
+        Metrics.add("cache_compressed_input_bytes_total", raw.length);
+        Metrics.add("cache_compressed_output_bytes_total", length);
+        byte[] compressed = new byte[length];
+        System.arraycopy(buffer, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    public static String decompress(byte[] compressed, int rawLength) throws DataFormatException {
+        long start = System.nanoTime();
+        Inflater inflater = inflaters.get();
+        inflater.setInput(compressed);
+
+        byte[] raw = new byte[rawLength];
+        try {
+            int length = 0;
+            while(length < rawLength) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if(inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Compressed page ends after " + length + " of " + rawLength + " bytes");
+                }
+                length += inflated;
+            }
+        }
+        finally {
+            inflater.reset();
+        }
+
+        Metrics.add("cache_decompress_nanos_total", System.nanoTime() - start);
+        Metrics.increment("cache_decompressions_total");
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private static Deflater deflater(int level) {
+        Deflater[] perLevel = deflaters.get();
+        if(perLevel[level] == null) {
+            perLevel[level] = new Deflater(level, true); // Ohne zlib-Kopf, die Länge steht im Eintrag
+        }
+        return perLevel[level];
+    }
+}
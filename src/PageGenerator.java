@@ -1,7 +1,8 @@
-import org.json.JSONObject;
-import org.json.JSONArray;
-import org.json.JSONException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -9,6 +10,9 @@ import java.time.format.DateTimeFormatter;
 
 class PageGenorator {
     private static final String GEMINI_DOMAIN = "gemini://127.0.0.1";
+    private static final int ESTIMATED_TEASER_LENGTH = 320; // Zeichen pro Eintrag in einer Liste, für die Größe des Puffers
+    private static final int ESTIMATED_PARAGRAPH_LENGTH = 400;
+    static final TeaserCache teaserCache = new TeaserCache(Settings.getInt("teaser_cache_entries", 2048));
     private RequestHandler rq;
     
     public PageGenorator(RequestHandler rq) {
@@ -16,271 +20,285 @@ class PageGenorator {
     }
 
     public String generateHomepage() throws AppException {
-        JSONObject homepageJson = rq.getHompage();
-        
+        return renderHomepage(rq.getHompage());
+    }
+
+    // Mit previous wird bei der Api bedingt angefragt, ist die Seite unverändert, wird nicht neu gerendert
+    public CompletableFuture<GeneratedPage> generateHomepageAsync(Validators previous) {
+        return renderAsync(rq.getHompageAsync(previous), homepage -> renderHomepage(homepage));
+    }
+
+    private String renderHomepage(NewsOverview overview) {
         // Datum
         String formattedDate = getCurrentDate();
 
+        GemtextWriter homepage = new GemtextWriter(512 + (overview.news.size() + overview.regional.size()) * ESTIMATED_TEASER_LENGTH);
+
         // Titel
-        String homepage = "# Tagesschau\n\n";
-
-        try {
-            // Füge generelle Nachrichten hinzu
-            JSONArray newsArr = homepageJson.getJSONArray("news");
-            String generalArticlesTitle = "Aktuelle Nachrichten - " + formattedDate;
-            homepage += generateArticleList(generalArticlesTitle, newsArr);
-
-            // Füge regionale Auswahl an Nachrichten hinzu
-            JSONArray regionalArr = homepageJson.getJSONArray("regional");
-            homepage += generateRegionalArticleList("Regional", regionalArr);
-
-            homepage += "## Ressort\n";
-            homepage += "=>" + GEMINI_DOMAIN + "/topic?inland Inland\n";
-            homepage += "=>" + GEMINI_DOMAIN + "/topic?ausland Ausland\n";
-            homepage += "=>" + GEMINI_DOMAIN + "/topic?wirtschaft Wirtschaft\n";
-            homepage += "=>" + GEMINI_DOMAIN + "/topic?sport Sport\n";
-            homepage += "=>" + GEMINI_DOMAIN + "/topic?video Video\n";
-
-            homepage += "## Suche\n=>" + GEMINI_DOMAIN + "/search Nach Artikel suchen\n";
-        }
-        catch (JSONException e) {
-            throw new MissingJsonValueException(e);
-        }
+        homepage.heading("# ", "Tagesschau").newline();
+
+        // Füge generelle Nachrichten hinzu
+        String generalArticlesTitle = "Aktuelle Nachrichten - " + formattedDate;
+        writeArticleList(homepage, generalArticlesTitle, overview.news);
+
+        // Füge regionale Auswahl an Nachrichten hinzu
+        writeRegionalArticleList(homepage, "Regional", overview.regional);
 
-        return homepage;
+        homepage.heading("## ", "Ressort");
+        homepage.link(GEMINI_DOMAIN + "/topic?inland", "Inland");
+        homepage.link(GEMINI_DOMAIN + "/topic?ausland", "Ausland");
+        homepage.link(GEMINI_DOMAIN + "/topic?wirtschaft", "Wirtschaft");
+        homepage.link(GEMINI_DOMAIN + "/topic?sport", "Sport");
+        homepage.link(GEMINI_DOMAIN + "/topic?video", "Video");
+
+        homepage.heading("## ", "Suche").link(GEMINI_DOMAIN + "/search", "Nach Artikel suchen");
+
+        return homepage.toString();
     }
 
     public String generateRegionalHomepage(int checkedRegionId) throws AppException {
         Region region = Region.uncheckedFromId(checkedRegionId);
-        JSONObject regionalNews = rq.getNews(new Region[] { region }, null);
-        String regionalHomepage = "# Tagesschau - " + Region.uncheckedNameFromId(region.regionId) + "\n\n";
+        return renderRegionalHomepage(region, rq.getNews(new Region[] { region }, null));
+    }
 
-        try {
-            String sectionTitle = "Aktuelle Nachrichten - " + getCurrentDate();
-            JSONArray articleList = regionalNews.getJSONArray("news");
-            regionalHomepage += generateArticleList(sectionTitle, articleList);
-        }
-        catch(JSONException e) {
-            throw new MissingJsonValueException(e);
-        }
+    public CompletableFuture<GeneratedPage> generateRegionalHomepageAsync(int checkedRegionId, Validators previous) {
+        Region region = Region.uncheckedFromId(checkedRegionId);
+        return renderAsync(rq.getNewsAsync(new Region[] { region }, null, previous), regionalNews -> renderRegionalHomepage(region, regionalNews));
+    }
+
+    private String renderRegionalHomepage(Region region, NewsOverview regionalNews) {
+        GemtextWriter regionalHomepage = new GemtextWriter(128 + regionalNews.news.size() * ESTIMATED_TEASER_LENGTH);
+        regionalHomepage.heading("# ", "Tagesschau - " + Region.uncheckedNameFromId(region.regionId)).newline();
 
-        return regionalHomepage;
+        String sectionTitle = "Aktuelle Nachrichten - " + getCurrentDate();
+        writeArticleList(regionalHomepage, sectionTitle, regionalNews.news);
+
+        return regionalHomepage.toString();
     }
 
     public String generateSearchPage(String query, int pageNumber) throws AppException {
-        String page = "# Suchergebnisse für '" + query + "'\n\n";
+        return renderSearchPage(query, pageNumber, rq.getSearchResults(query, pageNumber));
+    }
 
-        try {
-            JSONObject resultsContainer = rq.getSearchResults(query, pageNumber);
-            JSONArray results = resultsContainer.getJSONArray("searchResults");
+    public CompletableFuture<GeneratedPage> generateSearchPageAsync(String query, int pageNumber, Validators previous) {
+        return generateSearchPageAsync(query, pageNumber, previous, null);
+    }
 
-            if(results.length() == 0) {
-                page += "Leider keine Suchergebnisse für '" + query + "' gefunden\n";
-                page += String.format("=>%s/search Neue Suche\n", GEMINI_DOMAIN);
+    // onNextPage wird aufgerufen, wenn es laut Api nach dieser Seite noch weitere Ergebnisse gibt (nicht bei 304)
+    public CompletableFuture<GeneratedPage> generateSearchPageAsync(String query, int pageNumber, Validators previous, Runnable onNextPage) {
+        return renderAsync(rq.getSearchResultsAsync(query, pageNumber, previous), results -> {
+            if(onNextPage != null && hasNextSearchPage(pageNumber, results)) {
+                onNextPage.run();
             }
+            return renderSearchPage(query, pageNumber, results);
+        });
+    }
 
-            int i = 1;
-            int pageSize = rq.getSearchPageSize();
-            for(Object resultObj : results) {
-                JSONObject result = (JSONObject)resultObj;
-                
-                String dateAndTime = result.getString("date");
-                String date = timeAndDateFromIso8601(dateAndTime)[0];
-
-                String title = result.getString("title");
-
-                String link = result.getString("details");
-                String newLink = GEMINI_DOMAIN + "/do-request?" + link;
-
-                page += String.format("=>%s [%d] %s\n", newLink, i + pageNumber * pageSize, title);
-                
-                if(result.has("firstSentence")) {
-                    page += String.format("%s - %s\n\n", date, result.getString("firstSentence"));
-                }
-                else {
-                    page += date + "\n\n";
-                }
-
-                i++;
-            }
+    private boolean hasNextSearchPage(int pageNumber, SearchResult searchResult) {
+        return rq.getSearchPageSize() * (pageNumber + 1) < searchResult.totalItemCount;
+    }
+
+    private String renderSearchPage(String query, int pageNumber, SearchResult searchResult) {
+        List<Teaser> results = searchResult.results;
 
-            int totalResultCount = resultsContainer.getInt("totalItemCount");
-            String urlEncodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
-            if(pageSize * (pageNumber + 1) < totalResultCount) {
-                String nextPageLink = String.format("%s/search?%s&page=%d", GEMINI_DOMAIN, urlEncodedQuery, pageNumber + 1);
-                page += "\n=>" + nextPageLink + " Nächste Seite";
+        GemtextWriter page = new GemtextWriter(256 + results.size() * ESTIMATED_TEASER_LENGTH);
+        page.heading("# ", "Suchergebnisse für '" + query + "'").newline();
+
+        if(results.isEmpty()) {
+            page.line("Leider keine Suchergebnisse für '" + query + "' gefunden");
+            page.link(GEMINI_DOMAIN + "/search", "Neue Suche");
+        }
+
+        int i = 1;
+        int pageSize = rq.getSearchPageSize();
+        for(Teaser result : results) {
+            String newLink = GEMINI_DOMAIN + "/do-request?" + result.details;
+
+            page.text("=>").text(newLink).text(" [").text(i + pageNumber * pageSize).text("] ").line(result.title);
+
+            if(result.firstSentence != null) {
+                page.date(result.date).text(" - ").line(result.firstSentence).newline();
             }
-            if(pageNumber != 0) {
-                String nextPageLink = String.format("%s/search?%s&page=%d", GEMINI_DOMAIN, urlEncodedQuery, pageNumber - 1);
-                page += "\n=>" + nextPageLink + " Vorherrige Seite";
+            else {
+                page.date(result.date).newline().newline();
             }
 
-            return page;
+            i++;
         }
-        catch(JSONException e) {
-            throw new MissingJsonValueException(e);
+
+        String urlEncodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
+        String searchLink = GEMINI_DOMAIN + "/search?" + urlEncodedQuery + "&page=";
+        if(hasNextSearchPage(pageNumber, searchResult)) {
+            page.newline().text("=>").text(searchLink).text(pageNumber + 1).text(" Nächste Seite");
+        }
+        if(pageNumber != 0) {
+            page.newline().text("=>").text(searchLink).text(pageNumber - 1).text(" Vorherrige Seite");
         }
+
+        return page.toString();
     }
 
     public String generateTopicHomepage(String validTopicName) throws AppException {
         Topic topic = Topic.fromValidName(validTopicName);
-        JSONObject news = rq.getNews(new Region[] {}, topic);
-        
+        return renderTopicHomepage(validTopicName, rq.getNews(new Region[] {}, topic));
+    }
+
+    public CompletableFuture<GeneratedPage> generateTopicHomepageAsync(String validTopicName, Validators previous) {
+        Topic topic = Topic.fromValidName(validTopicName);
+        return renderAsync(rq.getNewsAsync(new Region[] {}, topic, previous), news -> renderTopicHomepage(validTopicName, news));
+    }
+
+    private String renderTopicHomepage(String validTopicName, NewsOverview news) {
         char firstChar = validTopicName.charAt(0);
         char firstCharCaps = (char)((short)firstChar - 32);
         String topicName = validTopicName.substring(1, validTopicName.length());
         topicName = firstCharCaps + topicName;
 
-        String topicHomepage = "# Tagesschau - " + topicName + "\n\n";
-        
-        try {
-            String sectionTitle = "Aktuelle Nachrichten - " + getCurrentDate();
-            JSONArray articleList = news.getJSONArray("news");
-            topicHomepage += generateArticleList(sectionTitle, articleList);
-        }
-        catch(JSONException e) {
-            throw new MissingJsonValueException(e);
-        }
+        GemtextWriter topicHomepage = new GemtextWriter(128 + news.news.size() * ESTIMATED_TEASER_LENGTH);
+        topicHomepage.heading("# ", "Tagesschau - " + topicName).newline();
+
+        String sectionTitle = "Aktuelle Nachrichten - " + getCurrentDate();
+        writeArticleList(topicHomepage, sectionTitle, news.news);
 
-        return topicHomepage;
+        return topicHomepage.toString();
     }
 
     public String generateNewsPage(String verifiedSafeUrl) throws AppException {
-        String page = "";
-        
-        try {
-            // Sende Anfrage
-            JSONObject newsArticle = rq.executePreformedRequest(verifiedSafeUrl);
-            JSONArray content = newsArticle.getJSONArray("content");
-
-            // Zeit und Datum
-            String dateAndTime = newsArticle.getString("date");
-            String[] dateAndTimeParsed = timeAndDateFromIso8601(dateAndTime);
-            String date = dateAndTimeParsed[0];
-            String time = dateAndTimeParsed[1];
-
-            // Anfang
-            page += "#" + newsArticle.getString("title") + "\nTEXT_INFO_LINE_GOES_HERE\n\n";
-
-            // Füge alle Paragraphen hinzu
-            String reporterLine = "";
-            for(Object paragraphObj : content) {
-                JSONObject paragraph = (JSONObject)paragraphObj;
-
-                String paraType = paragraph.getString("type");
-                if(paraType.equals("text")) {
-                    String paraText = paragraph.getString("value");
-                    if(paraText.startsWith("<em>")) { // Für Reporter
-                        reporterLine = removeTags(paraText) + " "; // Leerzeichen wegen Datum
+        return renderNewsPage(rq.executePreformedRequest(verifiedSafeUrl));
+    }
+
+    public CompletableFuture<GeneratedPage> generateNewsPageAsync(String verifiedSafeUrl, Validators previous) {
+        return renderAsync(rq.executePreformedRequestAsync(verifiedSafeUrl, previous), article -> renderNewsPage(article), article -> article.date.epochSecond);
+    }
+
+    private String renderNewsPage(Article article) {
+        // Die Reporterzeile steht in der Infozeile unter dem Titel, deshalb wird sie vorher gesucht
+        Paragraph reporterLine = null;
+        for(Paragraph paragraph : article.content) {
+            if(paragraph.isReporterLine()) {
+                reporterLine = paragraph;
+            }
+        }
+
+        // Anfang mit Info über den Text
+        GemtextWriter page = new GemtextWriter(256 + article.content.size() * ESTIMATED_PARAGRAPH_LENGTH);
+        page.heading("#", article.title);
+        if(reporterLine != null) {
+            page.htmlText(reporterLine.value).text(" "); // Leerzeichen wegen Datum
+        }
+        page.date(article.date).text(" ").time(article.date).newline().newline();
+
+        // Füge alle Paragraphen hinzu
+        for(Paragraph paragraph : article.content) {
+            switch(paragraph.type) {
+                case TEXT:
+                    if(paragraph.isReporterLine()) { // Steht schon in der Infozeile
+                        continue;
                     }
-                    else if(paraText.startsWith("<strong>Über dieses Thema berichtete")) { // Extra Zeile am Ende, weil es inhaltlich nicht zum Artikel gehört
-                        page += "\n" + removeTags(paraText) + "\n";
+                    else if(paragraph.value.startsWith("<strong>Über dieses Thema berichtete")) { // Extra Zeile am Ende, weil es inhaltlich nicht zum Artikel gehört
+                        page.newline().htmlLine("", paragraph.value);
                     }
                     else {
-                        page += removeTags(paraText) + "\n";
+                        page.htmlLine("", paragraph.value);
                     }
-                }
-                else if(paraType.equals("headline")) {
-                    page += "###" + removeTags(paragraph.getString("value")) + "\n";
-                }
-                else if(paraType.equals("htmlEmbed")) {
-                    page += "=>" + paragraph.getJSONObject("htmlEmbed").getString("url") + " Externe Webseite\n";
-                }
+                    break;
+                case HEADLINE:
+                    page.htmlLine("###", paragraph.value);
+                    break;
+                case HTML_EMBED:
+                    page.link(paragraph.value, "Externe Webseite");
+                    break;
             }
-
-            // Info über den Text
-            String textInfoLine = String.format("%s%s %s", reporterLine, date, time);
-            page = page.replace("TEXT_INFO_LINE_GOES_HERE", textInfoLine);
-        }
-        catch(JSONException e) {
-            throw new MissingJsonValueException(e);
         }
 
-        return page;
+        return page.toString();
     }
 
-    private String generateArticleList(String title, JSONArray articleList) throws JSONException {
-        String page = "## " + title + "\n";
-        
-        for(Object articleObj : articleList) {
-            JSONObject article = (JSONObject)articleObj;
+    // Rendert, sobald die Antwort der Api da ist, im Thread, der die Antwort geliefert hat.
+    // Fehlende Werte sind schon beim Parsen aufgefallen, das Rendern selbst kann nicht mehr fehlschlagen.
+    private static <T> CompletableFuture<GeneratedPage> renderAsync(CompletableFuture<ApiResponse<T>> response, PageRenderer<T> renderer) {
+        return renderAsync(response, renderer, model -> -1);
+    }
 
-            boolean isVideo = false;
-            if(article.has("type") && article.getString("type").equals("video")) {
-                isVideo = true;
+    // publishedAt: Datum des Modells für TtlPolicy (nur bei Artikeln)
+    private static <T> CompletableFuture<GeneratedPage> renderAsync(CompletableFuture<ApiResponse<T>> response, PageRenderer<T> renderer, ToLongFunction<T> publishedAt) {
+        return response.thenApply(apiResponse -> {
+            if(apiResponse.isNotModified()) {
+                return new GeneratedPage(null, apiResponse.validators, -1);
             }
 
-            // Erstelle neue Url
-            String newLink;
-            if(!isVideo) {
-                String newApiRequest = article.getString("details"); // Wichtig!: Adresse muss geprüft werden
-                newLink = GEMINI_DOMAIN + "/do-request?" + newApiRequest; // Eigene "do-request" Endpoint
-            }
-            else {
-                newLink = article.getJSONObject("streams").getString("h264m");
+            return new GeneratedPage(renderer.render(apiResponse.model), apiResponse.validators, publishedAt.applyAsLong(apiResponse.model));
+        });
+    }
+
+    // Die Einträge kommen aus dem TeaserCache, neu gerendert werden nur neue oder geänderte Teaser
+    private void writeArticleList(GemtextWriter page, String title, List<Teaser> articleList) {
+        page.heading("## ", title);
+
+        for(Teaser article : articleList) {
+            String fragment = teaserCache.get(article);
+            if(fragment == null) {
+                fragment = renderTeaser(article);
+                teaserCache.put(article, fragment);
             }
+            page.text(fragment);
+        }
+    }
 
-            // Zeit der Publikation
-            String[] timeAndDate = timeAndDateFromIso8601(article.getString("date"));
-            String date = timeAndDate[0];
-            String time = timeAndDate[1];
-            
-            if(!isVideo) {
-                // Füge Link mit Titel ein und erster Satz hinzu
-                page += String.format("=>%s %s\n", newLink, article.getString("title"));
-                if(article.has("firstSentence")) {
-                    page += String.format("%s - %s\n\n", time, article.get("firstSentence"));
-                }
-                else {
-                    page += "\n";
-                }
+    private static String renderTeaser(Teaser article) {
+        GemtextWriter fragment = new GemtextWriter(ESTIMATED_TEASER_LENGTH);
+        if(!article.isVideo()) {
+            // Füge Link mit Titel ein und erster Satz hinzu
+            fragment.link(GEMINI_DOMAIN + "/do-request?" + article.details, article.title); // Eigene "do-request" Endpoint, wichtig!: Adresse muss geprüft werden
+            if(article.firstSentence != null) {
+                fragment.time(article.date).text(" - ").line(article.firstSentence).newline();
             }
             else {
-                String newTitle = article.getString("title").replace("tagesschau", "Tagesschau"); // "Tagesschau" groß schreiben, damit es besser aussieht, wenn es als erstes Wort kommt
-                page += String.format("=>%s %s - %s %s\n\n", newLink, newTitle, date, time);
+                fragment.newline();
             }
         }
-
-        return page;
+        else {
+            String newTitle = article.title.replace("tagesschau", "Tagesschau"); // "Tagesschau" groß schreiben, damit es besser aussieht, wenn es als erstes Wort kommt
+            fragment.text("=>").text(article.videoUrl).text(" ").text(newTitle).text(" - ").date(article.date).text(" ").time(article.date).newline().newline();
+        }
+        return fragment.toString();
     }
 
-    private String generateRegionalArticleList(String title, JSONArray articleList) throws JSONException {
-        String page = "## " + title + "\n";
+    private void writeRegionalArticleList(GemtextWriter page, String title, List<Teaser> articleList) {
+        page.heading("## ", title);
 
         int regionId = 1;
-        for(Object articleObj : articleList) {
-            JSONObject article = (JSONObject)articleObj;
-            
+        for(Teaser article : articleList) {
             if(regionId > 16) {
-                Program.log("Api may have changed -> see PageGenerator.java at generateRegionalArticleList");
+                Program.log("Api may have changed -> see PageGenerator.java at writeRegionalArticleList");
                 break;
             }
 
             String regionalArticlesLink = GEMINI_DOMAIN + "/regional?" + regionId;
             String regionName = Region.uncheckedNameFromId(regionId);
 
-            String articleApiRequest = article.getString("details");
-            String articleLink = GEMINI_DOMAIN + "/do-request?" + articleApiRequest;
+            String articleLink = GEMINI_DOMAIN + "/do-request?" + article.details;
 
-            page += String.format("### %s\n", regionName);
-            page += String.format("=>%s Aktuelle Nachrichten\n", regionalArticlesLink);
-            page += String.format("=>%s %s\n\n", articleLink, article.getString("title"));
+            page.heading("### ", regionName);
+            page.link(regionalArticlesLink, "Aktuelle Nachrichten");
+            page.link(articleLink, article.title).newline();
 
             regionId++;
         }
-
-        return page;
     }
 
-    private static String removeTags(String str) {
-        return str.replaceAll("<[\\w\\W]*?>", "");
-    }
+    public static List<String> extractArticleUrls(String page) { // Alle Artikel, auf die eine generierte Seite verlinkt
+        String linkPrefix = "=>" + GEMINI_DOMAIN + "/do-request?";
+        ArrayList<String> articleUrls = new ArrayList<String>();
+
+        for(String line : page.split("\n")) {
+            if(line.startsWith(linkPrefix)) {
+                int urlEnd = line.indexOf(' ', linkPrefix.length());
+                articleUrls.add(line.substring(linkPrefix.length(), urlEnd < 0 ? line.length() : urlEnd));
+            }
+        }
 
-    private static String[] timeAndDateFromIso8601(String formattedDateTime) {
-        String[] dateAndTime = new String[2];
-        dateAndTime[0] = formattedDateTime.substring(0, 10);
-        dateAndTime[1] = formattedDateTime.substring(11, 11 + 5);
-        return dateAndTime;
+        return articleUrls;
     }
 
     private static String getCurrentDate() {
@@ -292,6 +310,10 @@ class PageGenorator {
     }
 }
 
+interface PageRenderer<T> {
+    String render(T model);
+}
+
 class MissingJsonValueException extends AppException {
     MissingJsonValueException(String details, Exception e) { super(details, e); }
     MissingJsonValueException(String details) { super(details); }
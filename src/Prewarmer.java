@@ -0,0 +1,165 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generiert die Startseite, alle Regionalseiten und alle Ressortseiten regelmäßig neu,
+// bevor sie im Cache ablaufen, und lädt die meistverlinkten Artikel vor.
+class Prewarmer {
+    private final int interval;
+    private final int jitter;
+    private final int articleCount;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+    private final Random random = new Random();
+    private final AtomicLong lastCycleMillis = new AtomicLong();
+
+    private Prewarmer() {
+        this.interval = Settings.getInt("prewarm_interval", Math.min(CacheHandler.getCacheDuration("getTopic"), CacheHandler.getCacheDuration("getRegional")) / 2);
+        this.jitter = Settings.getInt("prewarm_jitter", 5);
+        this.articleCount = Settings.getInt("prewarm_articles", 20);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> newDaemonThread(runnable, "prewarm-scheduler"));
+        this.workers = Executors.newFixedThreadPool(Settings.getInt("prewarm_parallelism", 4), runnable -> newDaemonThread(runnable, "prewarm-worker"));
+
+        Metrics.registerGauge("prewarm_last_cycle_ms", () -> lastCycleMillis.get());
+    }
+
+    public static void startIfEnabled() {
+        if(Settings.getBoolean("prewarm", false)) {
+            Prewarmer prewarmer = new Prewarmer();
+            prewarmer.scheduleNextCycle(0);
+            prewarmer.scheduleHomepageRefresh();
+        }
+    }
+
+    private void scheduleNextCycle(long delaySeconds) {
+        scheduler.schedule(() -> {
+            try {
+                runCycle();
+            }
+            catch(Exception e) { // Der Zeitplan darf nicht abbrechen
+                Program.log("Prewarm cycle failed: " + e);
+            }
+            finally {
+                scheduleNextCycle(interval + randomJitter());
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void scheduleHomepageRefresh() { // Die Startseite läuft schneller ab als ein Durchlauf dauert
+        int homepageDuration = CacheHandler.getCacheDuration("getHomepage");
+        if(homepageDuration >= interval) {
+            return; // Wird schon bei jedem Durchlauf erneuert
+        }
+
+        int period = Math.max(homepageDuration - jitter * 2 - 10, 10);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                PageGenorator pg = new PageGenorator(new RequestHandler());
+                CacheHandler.refreshIfExpiring("getHomepage", Program.HOMEPAGE_CACHE_KEY, period + jitter * 2, previous -> pg.generateHomepageAsync(previous));
+                Metrics.increment("prewarm_pages_total");
+            }
+            catch(AppException e) {
+                Metrics.increment("prewarm_failures_total");
+                Program.log("Prewarm failed: " + e.getInternalDetails());
+            }
+            catch(RuntimeException e) { // Sonst wird der Zeitplan abgebrochen
+                Metrics.increment("prewarm_failures_total");
+                Program.log("Prewarm failed: " + e);
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    private void runCycle() throws InterruptedException {
+        long start = System.nanoTime();
+        PageGenorator pg = new PageGenorator(new RequestHandler());
+        int refreshWindow = interval + jitter * 2; // Alles, was bis zum nächsten Durchlauf ablaufen würde
+        int homepageRefreshWindow = CacheHandler.getCacheDuration("getHomepage"); // Läuft meistens vor dem nächsten Durchlauf ab, wird also immer neu generiert
+
+        // Übersichtsseiten; die Reihenfolge bestimmt, welche Artikel als erstes vorgeladen werden
+        ArrayList<Callable<List<String>>> pageTasks = new ArrayList<Callable<List<String>>>();
+        pageTasks.add(withJitter("getHomepage", Program.HOMEPAGE_CACHE_KEY, homepageRefreshWindow, previous -> pg.generateHomepageAsync(previous)));
+        for(Topic topic : Topic.values()) {
+            pageTasks.add(withJitter("getTopic", topic.topicName, refreshWindow, previous -> pg.generateTopicHomepageAsync(topic.topicName, previous)));
+        }
+        for(int regionId = 1; regionId <= Region.values().length; regionId++) {
+            int checkedRegionId = regionId;
+            pageTasks.add(withJitter("getRegional", Program.regionalCacheKey(checkedRegionId), refreshWindow, previous -> pg.generateRegionalHomepageAsync(checkedRegionId, previous)));
+        }
+
+        LinkedHashSet<String> articleUrls = new LinkedHashSet<String>();
+        for(Future<List<String>> result : workers.invokeAll(pageTasks)) {
+            List<String> links = getOrLog(result);
+            if(links != null) {
+                articleUrls.addAll(links);
+            }
+        }
+
+        // Die ersten N Artikel vorladen
+        ArrayList<Callable<List<String>>> articleTasks = new ArrayList<Callable<List<String>>>();
+        for(String articleUrl : articleUrls) {
+            if(articleTasks.size() >= articleCount) {
+                break;
+            }
+            if(!Program.isWhitelistedUrl(articleUrl)) {
+                continue;
+            }
+
+            articleTasks.add(() -> {
+                CacheHandler.refreshIfExpiring("doRequest", articleUrl, refreshWindow, previous -> pg.generateNewsPageAsync(articleUrl, previous));
+                Metrics.increment("prewarm_articles_total");
+                return null;
+            });
+        }
+        for(Future<List<String>> result : workers.invokeAll(articleTasks)) {
+            getOrLog(result);
+        }
+
+        lastCycleMillis.set((System.nanoTime() - start) / 1000000);
+        Metrics.increment("prewarm_cycles_total");
+    }
+
+    private Callable<List<String>> withJitter(String endpoint, String articleUrl, int refreshWindow, AsyncPageSupplier generator) {
+        return () -> {
+            Thread.sleep(random.nextInt(jitter * 1000 + 1)); // Anfragen an die Api verteilen
+            String page = CacheHandler.refreshIfExpiring(endpoint, articleUrl, refreshWindow, generator);
+            Metrics.increment("prewarm_pages_total");
+            return PageGenorator.extractArticleUrls(page);
+        };
+    }
+
+    private int randomJitter() {
+        return random.nextInt(jitter * 2 + 1) - jitter;
+    }
+
+    private static List<String> getOrLog(Future<List<String>> result) throws InterruptedException {
+        try {
+            return result.get();
+        }
+        catch(ExecutionException e) {
+            Metrics.increment("prewarm_failures_total");
+            if(e.getCause() instanceof AppException) {
+                Program.log("Prewarm failed: " + ((AppException)e.getCause()).getInternalDetails());
+            }
+            else {
+                Program.log("Prewarm failed: " + e.getCause());
+            }
+            return null;
+        }
+    }
+
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
\ No newline at end of file
@@ -4,45 +4,153 @@ import java.io.IOException;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalDateTime;
 import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.lang.Thread;
 import java.io.OutputStream;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class Program {
     private static final String LOG_FILE = "log.txt";
     private static final int PORT = 5555;
+    static final String HOMEPAGE_CACHE_KEY = "homepage";
+    private static final String INVALID_ARGUMENTS = "Invalid arguments from server";
+    private static final AtomicBoolean firstResponseReported = new AtomicBoolean(false);
+    private static final List<String> ACTIONS = Arrays.asList("doRequest", "getHomepage", "getRegional", "getSearch", "getTopic");
 
     public static void main(String[] args) throws IOException {
+        String settingsFile = Settings.DEFAULT_SETTINGS_FILE;
+        boolean warmupOnly = false; // Nur aufwärmen und beenden, damit "make cds" das AppCDS-Archiv schreiben kann
+        for(String arg : args) {
+            if(arg.equals("--warmup-only")) {
+                warmupOnly = true;
+            }
+            else {
+                settingsFile = arg;
+            }
+        }
+
+        Settings.load(settingsFile);
+        if(warmupOnly || Settings.getBoolean("warmup_on_start", false)) {
+            Warmup.run(Settings.getInt("warmup_iterations", 10));
+        }
+        if(warmupOnly) {
+            return;
+        }
+        ApiClient.initialize();
+        CacheHandler.initialize(); // Vor dem Öffnen des Ports, nicht erst bei der ersten Anfrage
+        Metrics.startPeriodicDump(Settings.getInt("metrics_dump_interval", 60));
+        Metrics.startHttpEndpoint(Settings.getInt("metrics_port", 0));
+
+        boolean nio = Settings.getString("transport", "blocking").equals("nio"); // Wenige Threads für alle Verbindungen
+        WorkerPool workers = new WorkerPool(nio);
+        Prewarmer.startIfEnabled();
+        if(nio) {
+            NioServer server = new NioServer(PORT, workers);
+            reportStartup();
+            server.run();
+            return;
+        }
+
         ServerSocket server = new ServerSocket(PORT);
+        reportStartup();
         while(true) {
             try {
                 Socket client = server.accept();
-                ServerThread thread = new ServerThread(client); // Starte einen neuen Thread, der die argumente einliest und run() damit ausführt
+                ServerThread thread = new ServerThread(client, workers); // Liest die argumente ein und führt run() damit aus
 
                 CacheHandler.asyncHandleCacheClear(); // Falls Dateien aus dem Cache gelöscht werden sollen, starte einen neuen Thread
 
-                thread.start();
+                try {
+                    workers.submit(thread);
+                }
+                catch(RejectedExecutionException _e) {
+                    thread.reject(WorkerPool.getRejectionExitCode()); // Überlastet
+                }
             }
             catch(Exception _e) { continue; } // Ignoriere Fehler
         }
     }
 
-    public static int run(String[] args) throws IOException {
-        String outfilePath = null;
-        String action = null; // Possible values: doRequest, getHomepage, getRegional, getSearch, getTopic
-        String query = null;
+    // Zeit vom Start der JVM bis der Port offen ist, mit Bootstrap inklusive dem Laden von jsonJava.jar
+    private static void reportStartup() {
+        reportSinceJvmStart("startup_millis", "Listening on port " + PORT);
+    }
 
-        // Lese argumente
+    // Zeit vom Start der JVM bis die erste Antwort fertig ist (Time to first byte nach einem Neustart),
+    // dazu wie lange die erste Anfrage selbst gebraucht hat
+    private static void reportFirstResponse(long requestStartedAt) {
+        if(firstResponseReported.compareAndSet(false, true)) {
+            long requestMillis = System.currentTimeMillis() - requestStartedAt;
+            Metrics.registerGauge("first_request_millis", () -> requestMillis);
+            reportSinceJvmStart("first_response_millis", "First response (" + requestMillis + " ms for the request)");
+        }
+    }
+
+    // java.management wird erst danach in einem eigenen Thread geladen, damit die Anfrage nicht darauf wartet
+    private static void reportSinceJvmStart(String gauge, String event) {
+        long now = System.currentTimeMillis();
+        Thread reporter = new Thread(() -> {
+            long millis = now - ManagementFactory.getRuntimeMXBean().getStartTime();
+            Metrics.registerGauge(gauge, () -> millis);
+            log(event + " after " + millis + " ms since start");
+        }, "startup-report");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    // Altes Format: Die Seite wird in unique_file_path geschrieben, zurück geht nur der Exit-Code
+    public static int run(String[] args) {
+        return runAsync(args).join();
+    }
+
+    public static CompletableFuture<Integer> runAsync(String[] args) {
+        String outfilePath = null;
         for(String arg : args) {
             if(arg.startsWith("unique_file_path='")) {
                 outfilePath = arg.split("unique_file_path='")[1];
                 outfilePath = outfilePath.substring(0, outfilePath.length() - 1);
             }
-            else if(arg.startsWith("action='")) {
+        }
+
+        if(outfilePath == null) {
+            System.out.println(INVALID_ARGUMENTS);
+            return CompletableFuture.completedFuture(42); // CGI Fehler
+        }
+
+        String checkedOutfilePath = outfilePath;
+        return executeAsync(args).thenApply(result -> {
+            try {
+                writeToFile(checkedOutfilePath, result.body);
+                return result.exitCode;
+            }
+            catch(IOException e) {
+                log(e.toString());
+                return 42;
+            }
+        });
+    }
+
+    // Führt die Aktion aus und gibt Exit-Code und Seite (bzw. Fehlermeldung) zurück, unabhängig vom Protokoll.
+    // Bei Cache-Treffern ist das Ergebnis sofort fertig, sonst sobald die Api geantwortet hat.
+    static CompletableFuture<ActionResult> executeAsync(String[] args) {
+        long startedNanos = System.nanoTime();
+        String action = null; // Possible values: doRequest, getHomepage, getRegional, getSearch, getTopic
+        String query = null;
+
+        // Lese argumente
+        for(String arg : args) {
+            if(arg.startsWith("action='")) {
                 action = arg.split("action='")[1];
                 action = action.substring(0, action.length() - 1);
             }
@@ -50,12 +158,20 @@ class Program {
                 String[] argSplit = arg.split("query='");
                 query = argSplit.length > 1 ? argSplit[1] : "";
                 query = query.substring(0, query.length() - 1);
-                query = URLDecoder.decode(query, StandardCharsets.UTF_8.toString());
             }
         }
 
-        if(outfilePath == null || action == null) {
-            returnCgiError(outfilePath);
+        String checkedAction = action;
+        return executeAsync(action, query).thenApply(result -> {
+            recordAction(checkedAction, result.exitCode, startedNanos);
+            return result;
+        });
+    }
+
+    private static CompletableFuture<ActionResult> executeAsync(String action, String query) {
+        long startedAt = System.currentTimeMillis();
+        if(action == null) {
+            return CompletableFuture.completedFuture(new ActionResult(42, INVALID_ARGUMENTS));
         }
 
         // Erstelle Objekte
@@ -63,69 +179,95 @@ class Program {
         PageGenorator pg = new PageGenorator(rq);
 
         // Führe die gegebene aktion aus
-        String fileText = null;
+        CompletableFuture<String> page;
         try {
+            if(query != null) {
+                query = decodeQuery(query);
+            }
+            else if(!action.equals("getHomepage")) {
+                throw new InvalidRequestQueryException("The \"" + action + "\" action requires a query");
+            }
+
             if(action.equals("getHomepage")) {
-                fileText = pg.generateHomepage();
+                page = CacheHandler.retrieveOrGenerate("getHomepage", HOMEPAGE_CACHE_KEY, previous -> pg.generateHomepageAsync(previous));
             }
             else if(action.equals("doRequest")) {
-                fileText = handleDoRequest(pg, query);
+                page = handleDoRequest(pg, query);
             }
             else if(action.equals("getRegional")) {
-                fileText = handleRegionalRequest(pg, query);
+                page = handleRegionalRequest(pg, query);
             }
             else if(action.equals("getSearch")) {
-                fileText = handleSearchRequest(pg, query);
+                page = handleSearchRequest(pg, query);
             }
             else if(action.equals("getTopic")) {
-                fileText = handleTopicRequest(pg, query);
+                page = handleTopicRequest(pg, query);
             }
             else {
-                returnCgiError(outfilePath);
+                return CompletableFuture.completedFuture(new ActionResult(42, INVALID_ARGUMENTS));
             }
         }
-        catch(AppException e) {
-            writeToFile(outfilePath, e.toString() + ": " + e.getDetails());
-            log(e.toString() + ": " + e.getInternalDetails());
+        catch(AppException | RuntimeException e) {
+            return CompletableFuture.completedFuture(errorResult(e));
+        }
 
-            int exitCode = 42;
-            if(e instanceof UnauthorizedRequestException) {
-                exitCode = 53; // Server akzeptiert die Proxy-Anfrage nicht
-            }
-            else if(e instanceof ApiRequestFailureException) {
-                exitCode = 43; // Proxy Fehler
-            }
-            else if(e instanceof MissingJsonValueException) {
-                exitCode = 42; // Cgi Fehler
-            }
-            else if(e instanceof InvalidRequestQueryException) {
-                exitCode = 42; // Cgi Fehler (es gibt keinen passenderen Fehler)
-            }
+        return page.handle((fileText, error) -> {
+            reportFirstResponse(startedAt);
+            return error == null ? new ActionResult(0, fileText) : errorResult(ApiClient.unwrap(error));
+        });
+    }
+
+    // Dauer und Exit-Code pro Aktion. Unbekannte Aktionen zählen zusammen als "invalid", damit Clients keine neuen Reihen anlegen können.
+    private static void recordAction(String action, int exitCode, long startedNanos) {
+        String label = action != null && ACTIONS.contains(action) ? action : "invalid";
+        Metrics.recordNanos(Metrics.series("action_duration_seconds", "action", label), System.nanoTime() - startedNanos);
+        Metrics.increment(Metrics.series("action_results_total", "action", label, "exit_code", Integer.toString(exitCode)));
+    }
 
-            return exitCode;
+    private static ActionResult errorResult(Throwable error) {
+        if(!(error instanceof AppException)) { // Ohne Antwort würde der Client auf einer offenen Verbindung ewig warten
+            log("Unexpected error: " + error);
+            return new ActionResult(42, new AppException(new Exception(error)).getDetails());
         }
 
-        writeToFile(outfilePath, fileText);
-        return 0;
+        AppException e = (AppException)error;
+        log(e.toString() + ": " + e.getInternalDetails());
+
+        int exitCode = 42;
+        if(e instanceof UnauthorizedRequestException) {
+            exitCode = 53; // Server akzeptiert die Proxy-Anfrage nicht
+        }
+        else if(e instanceof ApiRequestFailureException) {
+            exitCode = 43; // Proxy Fehler
+        }
+        else if(e instanceof MissingJsonValueException) {
+            exitCode = 42; // Cgi Fehler
+        }
+        else if(e instanceof InvalidRequestQueryException) {
+            exitCode = 42; // Cgi Fehler (es gibt keinen passenderen Fehler)
+        }
+
+        return new ActionResult(exitCode, e.toString() + ": " + e.getDetails());
+    }
+
+    static String decodeQuery(String query) throws InvalidRequestQueryException {
+        try {
+            return URLDecoder.decode(query, StandardCharsets.UTF_8);
+        }
+        catch(IllegalArgumentException e) { // Ungültige %-Folge
+            throw new InvalidRequestQueryException("The query is not properly url encoded", e);
+        }
     }
 
-    static String handleTopicRequest(PageGenorator pg, String query) throws AppException {
+    static CompletableFuture<String> handleTopicRequest(PageGenorator pg, String query) throws AppException {
         if(!Topic.isValidName(query)) {
             throw new InvalidRequestQueryException("The \"/topic\" endpoint is only to be used internally and accepts only specific topic parameters");
         }
 
-        String cacheResult = CacheHandler.retrieveCachedArticle(query);
-        if(cacheResult == null) {
-            String generatedPage = pg.generateTopicHomepage(query);
-            CacheHandler.cacheArticle(query, generatedPage);
-            return generatedPage;
-        }
-        else {
-            return cacheResult;
-        }
+        return CacheHandler.retrieveOrGenerate("getTopic", query, previous -> pg.generateTopicHomepageAsync(query, previous));
     }
 
-    static String handleSearchRequest(PageGenorator pg, String query) throws AppException {
+    static CompletableFuture<String> handleSearchRequest(PageGenorator pg, String query) throws AppException {
         int page;
         String actualQuery;
         
@@ -147,56 +289,57 @@ class Program {
             page = 0;
         }
 
-        String generatedPage = pg.generateSearchPage(actualQuery, page);
-        return generatedPage;
+        // Gleiche Suchen mit anderer Schreibweise teilen sich einen Eintrag im Cache, angezeigt und gesucht wird aber die Anfrage, wie sie kam
+        String searchQuery = actualQuery;
+        String normalizedQuery = normalizeSearchQuery(actualQuery);
+        int pageNumber = page;
+        String cacheKey = searchCacheKey(normalizedQuery, pageNumber);
+        // Wer blättert, bekommt die nächste Seite direkt aus dem Cache. Ob es sie gibt, steht in der Antwort der Api (totalItemCount).
+        Runnable prefetchNextPage = () -> CacheHandler.prefetch("getSearch", searchCacheKey(normalizedQuery, pageNumber + 1), previous -> pg.generateSearchPageAsync(searchQuery, pageNumber + 1, previous));
+        return CacheHandler.retrieveOrGenerate("getSearch", cacheKey, previous -> pg.generateSearchPageAsync(searchQuery, pageNumber, previous, prefetchNextPage));
     }
 
-    static String handleRegionalRequest(PageGenorator pg, String query) throws AppException {
+    // Die Anfrage ist schon von decodeQuery dekodiert, für den Schlüssel im Cache zählen nur mehrere Leerzeichen wie eins und Groß-/Kleinschreibung nicht
+    static String normalizeSearchQuery(String query) {
+        return query.replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String searchCacheKey(String normalizedQuery, int page) { // Nur Zeichen, die auch im Dateinamen erlaubt sind
+        return "search-" + URLEncoder.encode(normalizedQuery, StandardCharsets.UTF_8) + "-" + page;
+    }
+
+    static CompletableFuture<String> handleRegionalRequest(PageGenorator pg, String query) throws AppException {
         try {
             int regionId = Integer.parseInt(query);
             if(regionId > 17 || regionId < 1) {
                 throw new InvalidRequestQueryException("The \"/regional\" endpoint is only to be used internally and only accepts numbers from 1 to 16");
             }
 
-            String articleName = "regional-" + query;
-            String cacheResult = CacheHandler.retrieveCachedArticle(articleName);
-            if(cacheResult != null) {
-                return cacheResult;
-            }
-            else {
-                String generatedPage = pg.generateRegionalHomepage(regionId);
-                CacheHandler.cacheArticle(articleName, generatedPage);
-                return generatedPage;
-            }
+            String articleName = regionalCacheKey(regionId);
+            return CacheHandler.retrieveOrGenerate("getRegional", articleName, previous -> pg.generateRegionalHomepageAsync(regionId, previous));
         }
         catch(NumberFormatException e) {
             throw new InvalidRequestQueryException("The \"/regional\" endpoint is only to be used internally and only accepts numbers as parameters", e);
         }
     }
 
-    static String handleDoRequest(PageGenorator pg, String queryUrl) throws AppException {
-        if(queryUrl.startsWith("https://www.tagesschau.de")
-        || queryUrl.startsWith("https://wetter.tagesschau.de")) {
-            String cacheResult = CacheHandler.retrieveCachedArticle(queryUrl);
-            if(cacheResult != null) {
-                return cacheResult;
-            }
-            else {
-                String articleContents = pg.generateNewsPage(queryUrl);
-                CacheHandler.cacheArticle(queryUrl, articleContents);
-                return articleContents;
-            }
+    static CompletableFuture<String> handleDoRequest(PageGenorator pg, String queryUrl) throws AppException {
+        if(isWhitelistedUrl(queryUrl)) {
+            return CacheHandler.retrieveOrGenerate("doRequest", queryUrl, previous -> pg.generateNewsPageAsync(queryUrl, previous));
         }
         else {
             throw new UnauthorizedRequestException("The requested request url " + queryUrl + " is not whitelisted");
         }
     }
 
-    static void returnCgiError(String nullableFilename) throws IOException {
-        String errMsg = "Invalid arguments from server";
-        if(nullableFilename != null) writeToFile(nullableFilename, errMsg);
-        else System.out.println(errMsg);
-        System.exit(42); // CGI Fehler
+    static boolean isWhitelistedUrl(String queryUrl) {
+        return queryUrl.startsWith("https://www.tagesschau.de")
+            || queryUrl.startsWith("https://wetter.tagesschau.de")
+            || queryUrl.startsWith(RequestHandler.getApiUrl() + "/"); // Falls eine andere Api eingestellt ist
+    }
+
+    static String regionalCacheKey(int regionId) {
+        return "regional-" + regionId;
     }
 
     static void writeToFile(String filename, String text) throws IOException {
@@ -222,23 +365,51 @@ class Program {
     }
 }
 
-class ServerThread extends Thread {
+// Ergebnis einer Aktion: Exit-Code wie beim helper-client und die Seite bzw. Fehlermeldung
+class ActionResult {
+    final int exitCode;
+    final String body;
+
+    ActionResult(int exitCode, String body) {
+        this.exitCode = exitCode;
+        this.body = body;
+    }
+}
+
+class ServerThread implements Runnable {
+    static final int MAX_LEGACY_REQUEST_SIZE = 64 * 1024;
+    private static final AtomicInteger active = new AtomicInteger();
+
+    static {
+        Metrics.registerGauge("server_threads_active", () -> active.get());
+    }
+
     Socket client;
+    private final WorkerPool workers;
 
-    public ServerThread(Socket client) {
+    public ServerThread(Socket client, WorkerPool workers) {
         this.client = client;
+        this.workers = workers;
     }
 
     @Override
     public void run() {
+        active.incrementAndGet();
         try {
             OutputStream writer = client.getOutputStream();
             InputStream reader = client.getInputStream();
 
-            byte[] buffer = new byte[1024];
-            int bytesRead = reader.read(buffer);
-            String[] args = stringArrayFromCEncoding(buffer, bytesRead);
-            
+            int firstByte = reader.read();
+            if(firstByte < 0) {
+                client.close();
+                return;
+            }
+            if(firstByte == FramedConnection.MARKER) { // Gerahmtes Protokoll, die Verbindung bleibt offen
+                new FramedConnection(client, workers).start();
+                return;
+            }
+
+            String[] args = readLegacyRequest(reader, firstByte);
             int exitCode = Program.run(args);
             writer.write((byte)exitCode);
 
@@ -248,19 +419,57 @@ class ServerThread extends Thread {
         catch(IOException e) {
             Program.log(e.toString());
         }
+        finally {
+            active.decrementAndGet();
+        }
     }
 
-    private String[] stringArrayFromCEncoding(byte[] buffer, int bufferSize) {
-        ArrayList<String> strings = new ArrayList<String>();
-        
-        String currString = "";
-        for(int i = 0; i < bufferSize; i++) {
-            if(buffer[i] != 0) {
-                currString += (char)buffer[i];
+    // Das alte Format hat kein Längenfeld: Gelesen wird, bis die Daten mit NUL enden und nichts mehr ansteht
+    static String[] readLegacyRequest(InputStream reader, int firstByte) throws IOException {
+        byte[] buffer = new byte[1024];
+        buffer[0] = (byte)firstByte;
+        int size = 1;
+        while(buffer[size - 1] != 0 || reader.available() > 0) {
+            if(size == buffer.length) {
+                if(size >= MAX_LEGACY_REQUEST_SIZE) {
+                    throw new IOException("Request exceeds " + MAX_LEGACY_REQUEST_SIZE + " bytes");
+                }
+                buffer = Arrays.copyOf(buffer, size * 2);
             }
-            else {
-                strings.add(currString);
-                currString = "";
+
+            int bytesRead = reader.read(buffer, size, buffer.length - size);
+            if(bytesRead < 0) {
+                break;
+            }
+            size += bytesRead;
+        }
+        return stringArrayFromCEncoding(buffer, size);
+    }
+
+    public void reject(int exitCode) {
+        try {
+            client.getOutputStream().write((byte)exitCode);
+            client.close();
+        }
+        catch(IOException e) {
+            Program.log(e.toString());
+        }
+    }
+
+    static String[] stringArrayFromCEncoding(byte[] buffer, int bufferSize) {
+        return stringArrayFromCEncoding(buffer, 0, bufferSize);
+    }
+
+    // Mit NUL abgeschlossene UTF-8 Strings, ein unvollständiger letzter String wird ignoriert
+    static String[] stringArrayFromCEncoding(byte[] buffer, int offset, int length) {
+        ArrayList<String> strings = new ArrayList<String>();
+
+        int start = offset;
+        int end = offset + length;
+        for(int i = offset; i < end; i++) {
+            if(buffer[i] == 0) {
+                strings.add(new String(buffer, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
             }
         }
 
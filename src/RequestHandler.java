@@ -1,26 +1,22 @@
 import java.util.ArrayList;
 import java.nio.charset.StandardCharsets;
 import java.io.IOException;
-import java.lang.InterruptedException;
-import java.net.URI;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import org.json.JSONObject;
-import org.json.JSONException;
 
 class RequestHandler {
     private static final int SEARCH_PAGE_SIZE = 15;
-    private static final String API_URL = "https://www.tagesschau.de/api2";
+    private static final String API_URL = Settings.getString("api_url", "https://www.tagesschau.de/api2"); // Für Lasttests auf bench/mock-api.py umstellbar
 
-    private HttpClient client;
-
-    public RequestHandler() {
-        this.client = HttpClient.newHttpClient();
+    public SearchResult getSearchResults(String query, int page) throws AppException {
+        return ApiClient.await(getSearchResultsAsync(query, page, null)).model;
     }
 
-    public JSONObject getSearchResults(String query, int page) throws ApiRequestFailureException {
+    public CompletableFuture<ApiResponse<SearchResult>> getSearchResultsAsync(String query, int page, Validators previous) {
         RequestParameter[] params = new RequestParameter[] {
             new RequestParameter("searchText", query),
             new RequestParameter("resultPage", page + ""),
@@ -29,11 +25,14 @@ class RequestHandler {
         };
 
         // Sende die Anfrage mit den Parametern
-        JSONObject response = sendRequest("search", params);
-        return response;
+        return sendRequest("search", params, SearchResult.READER, previous);
+    }
+
+    public NewsOverview getNews(Region[] regions, Topic topic) throws AppException {
+        return ApiClient.await(getNewsAsync(regions, topic, null)).model;
     }
 
-    public JSONObject getNews(Region[] regions, Topic topic) throws ApiRequestFailureException {
+    public CompletableFuture<ApiResponse<NewsOverview>> getNewsAsync(Region[] regions, Topic topic, Validators previous) {
         ArrayList<RequestParameter> params = new ArrayList<RequestParameter>();
 
         // Füge Regionen hinzu
@@ -57,62 +56,68 @@ class RequestHandler {
         params.toArray(paramArray);
 
         // Sende die Anfrage
-        JSONObject response = sendRequest("news", paramArray);
-        return response;
+        return sendRequest("news", paramArray, NewsOverview.NEWS, previous);
     }
 
-    public JSONObject getHompage() throws ApiRequestFailureException {
-        // Sende die Anfrage
-        JSONObject response = sendRequest("homepage", new RequestParameter[0]);
-        return response;
+    public NewsOverview getHompage() throws AppException {
+        return ApiClient.await(getHompageAsync(null)).model;
     }
 
-    public JSONObject executePreformedRequest(String verifiedSafeUrl) throws ApiRequestFailureException {
-        try {
-            // Erstelle und sende Anfrage
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(verifiedSafeUrl))
-                .build();
-            HttpResponse<String> response = this.client.send(request, HttpResponse.BodyHandlers.ofString());
+    // Mit previous wird bedingt angefragt (siehe ApiClient.fetch)
+    public CompletableFuture<ApiResponse<NewsOverview>> getHompageAsync(Validators previous) {
+        return sendRequest("homepage", new RequestParameter[0], NewsOverview.HOMEPAGE, previous);
+    }
 
-            JSONObject parsedObject = new JSONObject(response.body());
-            return parsedObject;
-        }
-        catch(JSONException | IOException | InterruptedException e) {
-            throw new ApiRequestFailureException(e);
-        }
+    public Article executePreformedRequest(String verifiedSafeUrl) throws AppException {
+        return ApiClient.await(executePreformedRequestAsync(verifiedSafeUrl, null)).model;
+    }
+
+    public CompletableFuture<ApiResponse<Article>> executePreformedRequestAsync(String verifiedSafeUrl, Validators previous) {
+        return timed("article", () -> ApiClient.fetch("article", verifiedSafeUrl, Article.READER, previous));
+    }
+
+    public static String getApiUrl() {
+        return API_URL;
     }
 
     public int getSearchPageSize() {
         return SEARCH_PAGE_SIZE;
     }
 
-    private JSONObject sendRequest(String endpoint, RequestParameter[] params) throws ApiRequestFailureException {
-        try {
-            // Erstelle url für die Anfrage
-            String url = API_URL + "/" + endpoint + "/";
-            if(params.length != 0) {
-                url += "?";
+    private <T> CompletableFuture<ApiResponse<T>> sendRequest(String endpoint, RequestParameter[] params, ModelReader<T> reader, Validators previous) {
+        // Erstelle url für die Anfrage
+        String url = API_URL + "/" + endpoint + "/";
+        if(params.length != 0) {
+            url += "?";
 
-                for(RequestParameter param : params) {
-                    url += URLEncoder.encode(param.parameter, StandardCharsets.UTF_8.toString());
-                    url += "=" + URLEncoder.encode(param.value, StandardCharsets.UTF_8.toString()) + "&";
-                }
-                url = url.substring(0, url.length() - 1);
+            for(RequestParameter param : params) {
+                url += URLEncoder.encode(param.parameter, StandardCharsets.UTF_8);
+                url += "=" + URLEncoder.encode(param.value, StandardCharsets.UTF_8) + "&";
             }
+            url = url.substring(0, url.length() - 1);
+        }
 
-            // Erstelle und sende die Anfrage
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .build();
-            HttpResponse<String> response = this.client.send(request, HttpResponse.BodyHandlers.ofString());
+        String checkedUrl = url;
 
-            // Erstelle ein JSONObject aus der Antwort
-            JSONObject parsedObject = new JSONObject(response.body());
-            return parsedObject;
-        }
-        catch(JSONException | IOException | InterruptedException e) {
-            throw new ApiRequestFailureException(e);
+        // Sende die Anfrage über den gemeinsamen Client, das Modell wird aus der Antwort gelesen
+        return timed(endpoint, () -> ApiClient.fetch(endpoint, checkedUrl, reader, previous));
+    }
+
+    // Dauer eines Aufrufs bis das Modell fertig ist, mit Warteschlange und Parsen (nur die Api: api_request_duration_seconds)
+    private static <T> CompletableFuture<T> timed(String endpoint, Supplier<CompletableFuture<T>> call) {
+        long startedAt = System.nanoTime();
+        return call.get().whenComplete((_result, _error) -> {
+            Metrics.recordNanos(Metrics.series("request_handler_duration_seconds", "endpoint", endpoint), System.nanoTime() - startedAt);
+        });
+    }
+
+    static <T> T parseBody(InputStream body, ModelReader<T> modelReader) throws IOException, MissingJsonValueException {
+        // Die Antwort wird direkt aus dem Stream gelesen, nur die benötigten Felder landen im Modell
+        try(Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            JsonPullParser parser = new JsonPullParser(reader);
+            T model = modelReader.read(parser);
+            parser.endDocument();
+            return model;
         }
     }
 
@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+import org.json.JSONException;
+
+class Settings {
+    public static final String DEFAULT_SETTINGS_FILE = "mirror_settings.json";
+
+    private static JSONObject settings = new JSONObject();
+
+    public static void load(String filename) {
+        Path path = Paths.get(filename);
+        if(!Files.isRegularFile(path)) {
+            return; // Ohne Datei werden die Standardwerte verwendet
+        }
+
+        try {
+            String contents = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            settings = new JSONObject(contents);
+        }
+        catch(IOException | JSONException e) {
+            Program.log("Failed to load settings from " + filename + ", using defaults: " + e);
+        }
+    }
+
+    public static String getString(String key, String defaultValue) {
+        return settings.optString(key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return settings.optInt(key, defaultValue);
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return settings.optBoolean(key, defaultValue);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Sorgt dafür, dass pro Schlüssel nur eine Seite gleichzeitig generiert wird.
+// Alle anderen Threads, die dieselbe Seite brauchen, warten auf das Ergebnis des ersten.
+class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<String, CompletableFuture<String>>();
+
+    public SingleFlight() {
+        Metrics.registerGauge("singleflight_in_flight", () -> inFlight.size());
+        Metrics.registerGauge("singleflight_dedup_percent", () -> {
+            long leaders = Metrics.getCounter("singleflight_leaders_total");
+            long followers = Metrics.getCounter("singleflight_followers_total");
+            return leaders + followers == 0 ? 0 : followers * 100 / (leaders + followers);
+        });
+    }
+
+    // Die Seite wird erst fertig, wenn die Antwort der Api da ist, bis dahin blockiert kein Thread
+    public CompletableFuture<String> runAsync(String key, Supplier<CompletableFuture<String>> supplier) {
+        CompletableFuture<String> call = new CompletableFuture<String>();
+        CompletableFuture<String> existingCall = inFlight.putIfAbsent(key, call);
+        if(existingCall != null) {
+            Metrics.increment("singleflight_followers_total");
+            return existingCall.copy();
+        }
+
+        Metrics.increment("singleflight_leaders_total");
+        CompletableFuture<String> generated;
+        try {
+            generated = supplier.get();
+        }
+        catch(RuntimeException | Error e) {
+            generated = CompletableFuture.failedFuture(e);
+        }
+
+        generated.whenComplete((result, error) -> {
+            inFlight.remove(key, call);
+            if(error != null) {
+                call.completeExceptionally(ApiClient.unwrap(error)); // Derselbe Fehler für alle Wartenden
+            }
+            else {
+                call.complete(result);
+            }
+        });
+        return call.copy();
+    }
+}
+
+// previous sind die Validatoren der abgelaufenen Seite im Cache (oder null) für eine bedingte Anfrage an die Api
+interface AsyncPageSupplier {
+    CompletableFuture<GeneratedPage> generate(Validators previous);
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+// Entfernt HTML-Tags aus den Absätzen der Api in einem Durchlauf und wandelt HTML-Entitäten um.
+// Links (<a href="...">) gehen dabei nicht verloren, sie können mit appendLinks() als Gemtext-Links angehängt werden.
+class TagStripper {
+    private static final String WEB_DOMAIN = "https://www.tagesschau.de";
+
+    // Namen und Zeichen der Entitäten, die in den Artikeln vorkommen
+    private static final String[] ENTITY_NAMES = {
+        "amp", "lt", "gt", "quot", "apos", "nbsp", "shy",
+        "ndash", "mdash", "hellip", "bdquo", "ldquo", "rdquo", "sbquo", "lsquo", "rsquo", "laquo", "raquo",
+        "auml", "ouml", "uuml", "Auml", "Ouml", "Uuml", "szlig", "euro", "eacute", "egrave", "aacute", "agrave", "ccedil", "middot", "deg"
+    };
+    private static final char[] ENTITY_CHARS = {
+        '&', '<', '>', '"', '\'', '\u00a0', '\u00ad',
+        '–', '—', '…', '„', '“', '”', '‚', '‘', '’', '«', '»',
+        'ä', 'ö', 'ü', 'Ä', 'Ö', 'Ü', 'ß', '€', 'é', 'è', 'á', 'à', 'ç', '·', '°'
+    };
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    // Hängt den Text zwischen from und to ohne Tags an, gibt zurück, ob dabei ein Link übersprungen wurde.
+    // Gesucht wird nur nach '<' und '&' (String.indexOf ist dafür optimiert), der Text dazwischen wird am Stück kopiert.
+    // Ein Absatz ganz ohne Tags und Entitäten wird so in einem Schritt angehängt.
+    public static boolean appendText(StringBuilder out, String html, int from, int to) {
+        boolean hasLinks = false;
+        int nextTag = indexOf(html, '<', from, to);
+        int nextEntity = indexOf(html, '&', from, to);
+        int i = from;
+        while(nextTag < to || nextEntity < to) {
+            if(nextTag < nextEntity) {
+                out.append(html, i, nextTag);
+                int tagEnd = findTagEnd(html, nextTag + 1, to);
+                if(tagEnd < 0) { // Kein Tag, "<" bleibt stehen
+                    out.append('<');
+                    i = nextTag + 1;
+                }
+                else {
+                    if(isAnchorStart(html, nextTag)) {
+                        hasLinks = true;
+                    }
+                    i = tagEnd + 1;
+                }
+            }
+            else {
+                out.append(html, i, nextEntity);
+                i = appendEntity(out, html, nextEntity, to);
+            }
+
+            if(nextTag < i) { // Innerhalb eines Tags oder einer Entität wird nicht weiter gesucht
+                nextTag = indexOf(html, '<', i, to);
+            }
+            if(nextEntity < i) {
+                nextEntity = indexOf(html, '&', i, to);
+            }
+        }
+        out.append(html, i, to);
+        return hasLinks;
+    }
+
+    // Hängt für jeden Link im Absatz eine Zeile "=>url Text" an
+    public static void appendLinks(StringBuilder out, String html) {
+        int i = html.indexOf('<');
+        while(i >= 0) {
+            int tagEnd = findTagEnd(html, i + 1, html.length());
+            if(tagEnd < 0) { // Kein Tag, z.B. "a < b"
+                i = html.indexOf('<', i + 1);
+                continue;
+            }
+
+            if(isAnchorStart(html, i)) {
+                int hrefStart = findAttributeValue(html, i, tagEnd, "href");
+                int closeTag = indexOfIgnoreCase(html, "</a", tagEnd + 1);
+                int labelEnd = closeTag < 0 ? html.length() : closeTag;
+                if(hrefStart >= 0) {
+                    char quote = html.charAt(hrefStart - 1);
+                    int hrefEnd = quote == '"' || quote == '\'' ? html.indexOf(quote, hrefStart) : findUnquotedEnd(html, hrefStart, tagEnd);
+                    if(hrefEnd > hrefStart) {
+                        out.append("=>");
+                        if(html.charAt(hrefStart) == '/') { // Relative Adresse
+                            out.append(WEB_DOMAIN);
+                        }
+                        appendText(out, html, hrefStart, hrefEnd); // Entitäten wie &amp; in der Adresse umwandeln
+                        out.append(' ');
+                        appendText(out, html, tagEnd + 1, labelEnd);
+                        out.append('\n');
+                    }
+                }
+                tagEnd = labelEnd;
+            }
+
+            i = html.indexOf('<', tagEnd + 1);
+        }
+    }
+
+    private static int indexOf(String html, char c, int from, int to) { // to, wenn nicht gefunden
+        int i = html.indexOf(c, from);
+        return i < 0 || i > to ? to : i;
+    }
+
+    private static int findTagEnd(String html, int from, int to) { // Position von '>', Anführungszeichen werden beachtet
+        if(from >= to) {
+            return -1;
+        }
+        char first = html.charAt(from);
+        if(!(Character.isLetter(first) || first == '/' || first == '!')) {
+            return -1; // z.B. "a < b"
+        }
+
+        char quote = 0;
+        for(int i = from; i < to; i++) {
+            char c = html.charAt(i);
+            if(quote != 0) {
+                if(c == quote) {
+                    quote = 0;
+                }
+            }
+            else if(c == '"' || c == '\'') {
+                quote = c;
+            }
+            else if(c == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isAnchorStart(String html, int tagStart) {
+        if(tagStart + 2 >= html.length()) {
+            return false;
+        }
+        char name = html.charAt(tagStart + 1);
+        char after = html.charAt(tagStart + 2);
+        return (name == 'a' || name == 'A') && (after == ' ' || after == '\t' || after == '\n' || after == '>');
+    }
+
+    private static int findAttributeValue(String html, int tagStart, int tagEnd, String attribute) { // Anfang des Werts oder -1
+        int i = tagStart;
+        while(true) {
+            i = indexOfIgnoreCase(html, attribute, i + 1);
+            if(i < 0 || i >= tagEnd) {
+                return -1;
+            }
+
+            char before = html.charAt(i - 1);
+            int j = i + attribute.length();
+            while(j < tagEnd && html.charAt(j) == ' ') j++;
+            if((before == ' ' || before == '\t' || before == '\n') && j < tagEnd && html.charAt(j) == '=') {
+                j++;
+                while(j < tagEnd && html.charAt(j) == ' ') j++;
+                if(j < tagEnd && (html.charAt(j) == '"' || html.charAt(j) == '\'')) {
+                    j++;
+                }
+                return j;
+            }
+        }
+    }
+
+    private static int findUnquotedEnd(String html, int from, int tagEnd) {
+        int i = from;
+        while(i < tagEnd && html.charAt(i) != ' ') i++;
+        return i;
+    }
+
+    private static int appendEntity(StringBuilder out, String html, int ampersand, int to) { // Gibt die Position nach der Entität zurück
+        int semicolon = -1;
+        int limit = Math.min(to, ampersand + MAX_ENTITY_LENGTH + 2);
+        for(int i = ampersand + 1; i < limit; i++) {
+            if(html.charAt(i) == ';') {
+                semicolon = i;
+                break;
+            }
+        }
+
+        if(semicolon > ampersand + 1) {
+            int nameStart = ampersand + 1;
+            int nameLength = semicolon - nameStart;
+            if(html.charAt(nameStart) == '#') {
+                int codePoint = parseCharacterReference(html, nameStart + 1, semicolon);
+                if(codePoint >= 0) {
+                    out.appendCodePoint(codePoint);
+                    return semicolon + 1;
+                }
+            }
+            else {
+                for(int e = 0; e < ENTITY_NAMES.length; e++) {
+                    String name = ENTITY_NAMES[e];
+                    if(name.length() == nameLength && html.regionMatches(nameStart, name, 0, nameLength)) {
+                        out.append(ENTITY_CHARS[e]);
+                        return semicolon + 1;
+                    }
+                }
+            }
+        }
+
+        out.append('&'); // Unbekannt, unverändert übernehmen
+        return ampersand + 1;
+    }
+
+    private static int parseCharacterReference(String html, int from, int to) { // &#228; oder &#xE4;, -1 wenn ungültig
+        int radix = 10;
+        if(from < to && (html.charAt(from) == 'x' || html.charAt(from) == 'X')) {
+            radix = 16;
+            from++;
+        }
+        if(from == to) {
+            return -1;
+        }
+
+        int value = 0;
+        for(int i = from; i < to; i++) {
+            int digit = Character.digit(html.charAt(i), radix);
+            if(digit < 0) {
+                return -1;
+            }
+            value = value * radix + digit;
+            if(value > Character.MAX_CODE_POINT) {
+                return -1;
+            }
+        }
+        return value == 0 ? -1 : value;
+    }
+
+    private static int indexOfIgnoreCase(String html, String search, int from) {
+        int last = html.length() - search.length();
+        for(int i = Math.max(from, 0); i <= last; i++) {
+            if(html.regionMatches(true, i, search, 0, search.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+// Ein Eintrag in einer Liste von Artikeln (Startseite, Ressorts, Regionen, Suche). Wie alle Modelle der Api-Antworten
+// unveränderlich und direkt aus dem JsonPullParser gelesen: nur die Felder, die gerendert werden, Pflichtfelder werden
+// schon beim Parsen geprüft. Es hängt kein JSON-Baum daran, ein Modell kann also gehalten und mehrfach gerendert werden.
+final class Teaser {
+    final String title;
+    final String details; // Api-Adresse des Artikels (für "do-request"), bei Videos optional
+    final String videoUrl; // streams.h264m, nur bei Videos und auch dort optional
+    final String firstSentence; // null, wenn nicht vorhanden
+    final ApiDate date; // null bei den regionalen Teasern der Startseite
+    private final boolean video;
+
+    private Teaser(String title, String details, String videoUrl, String firstSentence, ApiDate date, boolean video) {
+        this.title = title;
+        this.details = details;
+        this.videoUrl = videoUrl;
+        this.firstSentence = firstSentence;
+        this.date = date;
+        this.video = video;
+    }
+
+    boolean isVideo() {
+        return video;
+    }
+
+    boolean sameContent(Teaser other) { // Alles, was gerendert wird, ist gleich
+        return video == other.video && title.equals(other.title) && Objects.equals(details, other.details) && Objects.equals(videoUrl, other.videoUrl)
+            && Objects.equals(firstSentence, other.firstSentence) && (date == null ? other.date == null : date.sameInstant(other.date));
+    }
+
+    // Regionale Teaser der Startseite werden nur mit Titel und Link gerendert, brauchen also kein Datum.
+    // Bei Videos prüft erst die Liste, welcher Link gebraucht wird (Stream in den Übersichten, details in der Suche).
+    static Teaser read(JsonPullParser parser, boolean regional) throws IOException, MissingJsonValueException {
+        String type = null;
+        String title = null;
+        String details = null;
+        String videoUrl = null;
+        String firstSentence = null;
+        String date = null;
+
+        parser.beginObject();
+        String name;
+        while((name = parser.nextName()) != null) {
+            switch(name) {
+                case "type": type = parser.nextString(); break;
+                case "title": title = parser.nextString(); break;
+                case "details": details = parser.nextString(); break;
+                case "firstSentence": firstSentence = parser.nextString(); break;
+                case "date": date = parser.nextString(); break;
+                case "streams": videoUrl = readVideoUrl(parser); break;
+                default: parser.skipValue();
+            }
+        }
+
+        ModelReader.required(title, "title", "teaser");
+        if(regional) {
+            return new Teaser(title, ModelReader.required(details, "details", "teaser"), null, null, null, false);
+        }
+
+        ApiDate parsedDate = ModelReader.required(ApiDate.parse(date), "date", "teaser");
+        if("video".equals(type)) {
+            return new Teaser(title, details, videoUrl, firstSentence, parsedDate, true);
+        }
+        return new Teaser(title, ModelReader.required(details, "details", "teaser"), null, firstSentence, parsedDate, false);
+    }
+
+    static List<Teaser> readList(JsonPullParser parser, boolean regional) throws IOException, MissingJsonValueException {
+        if(!parser.beginOptionalArray()) {
+            return null; // Fehlt, wird vom Aufrufer gemeldet
+        }
+
+        ArrayList<Teaser> teasers = new ArrayList<Teaser>();
+        while(parser.hasNextElement()) {
+            teasers.add(read(parser, regional));
+        }
+        return Collections.unmodifiableList(teasers);
+    }
+
+    private static String readVideoUrl(JsonPullParser parser) throws IOException {
+        String url = null;
+        if(parser.beginOptionalObject()) {
+            String name;
+            while((name = parser.nextName()) != null) {
+                if(name.equals("h264m")) {
+                    url = parser.nextString();
+                }
+                else {
+                    parser.skipValue();
+                }
+            }
+        }
+        return url;
+    }
+}
+
+// Antwort von /homepage/ und /news/ (dort werden die regionalen Teaser nicht gebraucht und übersprungen)
+final class NewsOverview {
+    static final ModelReader<NewsOverview> HOMEPAGE = parser -> read(parser, true);
+    static final ModelReader<NewsOverview> NEWS = parser -> read(parser, false);
+
+    final List<Teaser> news;
+    final List<Teaser> regional; // Leer bei /news/
+
+    private NewsOverview(List<Teaser> news, List<Teaser> regional) {
+        this.news = news;
+        this.regional = regional;
+    }
+
+    private static NewsOverview read(JsonPullParser parser, boolean withRegional) throws IOException, MissingJsonValueException {
+        List<Teaser> news = null;
+        List<Teaser> regional = null;
+
+        parser.beginObject();
+        String name;
+        while((name = parser.nextName()) != null) {
+            if(name.equals("news")) {
+                news = Teaser.readList(parser, false);
+            }
+            else if(name.equals("regional") && withRegional) {
+                regional = Teaser.readList(parser, true);
+            }
+            else {
+                parser.skipValue();
+            }
+        }
+
+        ModelReader.required(news, "news", "response");
+        for(Teaser teaser : news) { // Videos werden in den Übersichten mit ihrem Stream verlinkt
+            if(teaser.isVideo()) {
+                ModelReader.required(teaser.videoUrl, "streams.h264m", "video teaser");
+            }
+        }
+        if(withRegional) {
+            ModelReader.required(regional, "regional", "response");
+        }
+        return new NewsOverview(news, regional != null ? regional : Collections.<Teaser>emptyList());
+    }
+}
+
+// Antwort von /search/
+final class SearchResult {
+    static final ModelReader<SearchResult> READER = SearchResult::read;
+
+    final List<Teaser> results;
+    final int totalItemCount;
+
+    private SearchResult(List<Teaser> results, int totalItemCount) {
+        this.results = results;
+        this.totalItemCount = totalItemCount;
+    }
+
+    private static SearchResult read(JsonPullParser parser) throws IOException, MissingJsonValueException {
+        List<Teaser> results = null;
+        int totalItemCount = -1;
+
+        parser.beginObject();
+        String name;
+        while((name = parser.nextName()) != null) {
+            if(name.equals("searchResults")) {
+                results = Teaser.readList(parser, false);
+            }
+            else if(name.equals("totalItemCount")) {
+                totalItemCount = parser.nextInt();
+            }
+            else {
+                parser.skipValue();
+            }
+        }
+
+        ModelReader.required(results, "searchResults", "response");
+        for(Teaser result : results) { // Die Suche verlinkt jedes Ergebnis mit details, auch Videos
+            ModelReader.required(result.details, "details", "search result");
+        }
+        if(totalItemCount < 0) {
+            throw new MissingJsonValueException("Missing \"totalItemCount\" in response");
+        }
+        return new SearchResult(results, totalItemCount);
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Gerenderte Einträge der Artikellisten, nach der Adresse des Artikels (bei Videos nach der Adresse des Videos).
+// Die Startseite, die Ressorts und die Regionen zeigen zum großen Teil dieselben Artikel, die dann nur einmal
+// gerendert werden. Ein Eintrag gilt nur, solange der Teaser aus der Api unverändert ist (Titel, erster Satz, Datum),
+// deshalb braucht es keine Ablaufzeit, begrenzt wird nur die Anzahl ("teaser_cache_entries").
+class TeaserCache {
+    private final int maxEntries;
+    private final LinkedHashMap<String, Fragment> fragments = new LinkedHashMap<String, Fragment>(64, 0.75f, true); // Zugriffsreihenfolge für LRU
+
+    public TeaserCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+
+        Metrics.registerGauge("teaser_cache_entries", () -> getEntryCount());
+    }
+
+    // null, wenn der Teaser noch nicht oder in einer anderen Fassung gerendert wurde
+    public synchronized String get(Teaser teaser) {
+        Fragment fragment = fragments.get(keyOf(teaser));
+        if(fragment == null || !fragment.teaser.sameContent(teaser)) {
+            Metrics.increment("teaser_cache_misses_total");
+            return null;
+        }
+
+        Metrics.increment("teaser_cache_hits_total");
+        return fragment.text;
+    }
+
+    public synchronized void put(Teaser teaser, String text) {
+        if(maxEntries <= 0) {
+            return;
+        }
+
+        fragments.put(keyOf(teaser), new Fragment(teaser, text));
+
+        Iterator<Fragment> iterator = fragments.values().iterator(); // Älteste Zugriffe zuerst
+        while(fragments.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            Metrics.increment("teaser_cache_evictions_total");
+        }
+    }
+
+    public synchronized void clear() {
+        fragments.clear();
+    }
+
+    private synchronized int getEntryCount() {
+        return fragments.size();
+    }
+
+    private static String keyOf(Teaser teaser) {
+        return teaser.isVideo() ? teaser.videoUrl : teaser.details;
+    }
+
+    private static class Fragment {
+        final Teaser teaser; // Woraus text gerendert wurde
+        final String text;
+
+        Fragment(Teaser teaser, String text) {
+            this.teaser = teaser;
+            this.text = text;
+        }
+    }
+}
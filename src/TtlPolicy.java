@@ -0,0 +1,55 @@
+import java.time.Instant;
+
+// Bestimmt, wie lange eine generierte Seite im Cache gültig ist:
+//   1. Grundwert pro Aktion ("homepage_cache_duration", "topic_cache_duration", "regional_cache_duration", "article_cache_duration",
+//      "search_cache_duration")
+//   2. Schickt die Api Cache-Control max-age, gilt dieser Wert, aber nicht kürzer als "min_cache_duration" und nicht länger als der Grundwert
+//   3. Hat die Antwort ein Datum (Artikel), bleibt die Seite "article_age_ttl_percent" Prozent ihres Alters gültig,
+//      höchstens "max_article_cache_duration". Alte Artikel ändern sich kaum noch, neue werden oft noch korrigiert.
+class TtlPolicy {
+    private static final int DEFAULT_TTL = 1800; // 30 min
+    private static final int MIN_TTL = Settings.getInt("min_cache_duration", 60);
+    private static final int HOMEPAGE_TTL = Math.max(Settings.getInt("homepage_cache_duration", 300), MIN_TTL); // Die Startseite ändert sich am häufigsten
+    private static final int TOPIC_TTL = Math.max(Settings.getInt("topic_cache_duration", 600), MIN_TTL);
+    private static final int REGIONAL_TTL = Math.max(Settings.getInt("regional_cache_duration", 600), MIN_TTL);
+    private static final int SEARCH_TTL = Math.max(Settings.getInt("search_cache_duration", 120), MIN_TTL); // Suchergebnisse ändern sich mit jedem neuen Artikel
+    private static final int ARTICLE_TTL = Math.max(Settings.getInt("article_cache_duration", DEFAULT_TTL), MIN_TTL);
+    private static final boolean HONOR_MAX_AGE = Settings.getBoolean("honor_upstream_max_age", true);
+    private static final int ARTICLE_AGE_PERCENT = Settings.getInt("article_age_ttl_percent", 10);
+    private static final int MAX_ARTICLE_TTL = Math.max(Settings.getInt("max_article_cache_duration", 86400), ARTICLE_TTL);
+
+    public static int baseTtl(String endpoint) { // null für den Standardwert
+        if(endpoint == null) {
+            return DEFAULT_TTL;
+        }
+
+        switch(endpoint) {
+            case "getHomepage": return HOMEPAGE_TTL;
+            case "getTopic": return TOPIC_TTL;
+            case "getRegional": return REGIONAL_TTL;
+            case "getSearch": return SEARCH_TTL;
+            case "doRequest": return ARTICLE_TTL;
+            default: return DEFAULT_TTL;
+        }
+    }
+
+    // publishedAt in Unix-Zeit (Sekunden), -1 wenn unbekannt
+    public static int ttlFor(String endpoint, Validators validators, long publishedAt) {
+        int ttl = baseTtl(endpoint);
+        if(HONOR_MAX_AGE && validators.maxAge >= 0) {
+            ttl = Math.max(MIN_TTL, Math.min(validators.maxAge, ttl));
+        }
+
+        if(publishedAt > 0) {
+            long age = Instant.now().getEpochSecond() - publishedAt;
+            long ageTtl = Math.min(age * ARTICLE_AGE_PERCENT / 100, MAX_ARTICLE_TTL);
+            ttl = (int)Math.max(ttl, ageTtl);
+        }
+
+        return ttl;
+    }
+
+    public static int maxTtl() { // Länger bleibt keine Seite gültig
+        return Math.max(Math.max(DEFAULT_TTL, MAX_ARTICLE_TTL), Math.max(Math.max(HOMEPAGE_TTL, TOPIC_TTL), Math.max(REGIONAL_TTL, SEARCH_TTL)));
+    }
+}
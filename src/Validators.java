@@ -0,0 +1,72 @@
+import java.net.http.HttpHeaders;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// ETag, Last-Modified und Cache-Control max-age einer Antwort der Api. Werden mit der Seite im Cache gespeichert,
+// damit eine abgelaufene Seite mit einer bedingten Anfrage geprüft werden kann (304 statt neu laden und rendern).
+class Validators {
+    static final Validators NONE = new Validators(null, null, -1);
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d+)");
+
+    final String etag; // null, wenn nicht vorhanden
+    final String lastModified;
+    final int maxAge; // Sekunden, -1 wenn nicht vorhanden
+
+    Validators(String etag, String lastModified, int maxAge) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.maxAge = maxAge;
+    }
+
+    static Validators fromHeaders(HttpHeaders headers) {
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        int maxAge = -1;
+
+        String cacheControl = headers.firstValue("Cache-Control").orElse("");
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        if(matcher.find()) {
+            try {
+                maxAge = Integer.parseInt(matcher.group(1));
+            }
+            catch(NumberFormatException _e) {} // Zu groß, wie nicht vorhanden behandeln
+        }
+
+        if(etag == null && lastModified == null && maxAge < 0) {
+            return NONE;
+        }
+        return new Validators(etag, lastModified, maxAge);
+    }
+
+    boolean canRevalidate() {
+        return etag != null || lastModified != null;
+    }
+
+    // Eine 304-Antwort darf die Validatoren ändern, fehlende Werte bleiben die alten
+    Validators updatedBy(Validators notModified) {
+        return new Validators(
+            notModified.etag != null ? notModified.etag : etag,
+            notModified.lastModified != null ? notModified.lastModified : lastModified,
+            notModified.maxAge >= 0 ? notModified.maxAge : maxAge
+        );
+    }
+
+    // Eine Zeile pro Wert, leer wenn nicht vorhanden (für die .meta Dateien im Cache)
+    String encode() {
+        return (etag == null ? "" : etag) + "\n" + (lastModified == null ? "" : lastModified) + "\n" + maxAge + "\n";
+    }
+
+    static Validators decode(String encoded) {
+        String[] lines = encoded.split("\n", -1);
+        if(lines.length < 3) {
+            return NONE;
+        }
+
+        try {
+            return new Validators(lines[0].isEmpty() ? null : lines[0], lines[1].isEmpty() ? null : lines[1], Integer.parseInt(lines[2].trim()));
+        }
+        catch(NumberFormatException _e) {
+            return NONE;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Rendert beim Start alle Seitenarten aus den mitgelieferten Fixtures (im jar unter "fixtures/", sonst bench/fixtures),
+// bevor der Port geöffnet wird. So sind Parser und Renderer schon geladen und vom JIT übersetzt, wenn die ersten
+// echten Anfragen kommen. Mit "--warmup-only" endet das Programm danach (für das AppCDS-Archiv, "make cds").
+class Warmup {
+    private static final String FIXTURE_DIR = "bench/fixtures";
+
+    public static void run(int iterations) {
+        long start = System.nanoTime();
+        ApiClient.initialize(); // HttpClient und seine Threads
+
+        PageGenorator pg;
+        try {
+            pg = new PageGenorator(new FixtureRequestHandler());
+        }
+        catch(IOException e) {
+            Program.log("Skipping warmup, fixtures not found: " + e);
+            return;
+        }
+
+        try {
+            for(int i = 0; i < iterations; i++) {
+                pg.generateHomepage();
+                pg.generateTopicHomepage("inland");
+                pg.generateRegionalHomepage(2);
+                pg.generateSearchPage("Klima", 1);
+                pg.generateNewsPage("https://www.tagesschau.de/api2/inland/warmup.json");
+            }
+        }
+        catch(AppException e) {
+            Program.log("Warmup failed: " + e.getInternalDetails());
+            return;
+        }
+
+        Program.log("Warmed up with " + iterations + " iterations in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    // Liefert die Fixtures statt der Antworten der Api, geparst wird wie bei echten Antworten bei jedem Aufruf
+    private static class FixtureRequestHandler extends RequestHandler {
+        private final byte[] homepage = readFixture("homepage");
+        private final byte[] news = readFixture("news");
+        private final byte[] search = readFixture("search");
+        private final byte[] article = readFixture("article");
+
+        FixtureRequestHandler() throws IOException {}
+
+        @Override
+        public SearchResult getSearchResults(String query, int page) throws AppException {
+            return parse(search, SearchResult.READER);
+        }
+
+        @Override
+        public NewsOverview getNews(Region[] regions, Topic topic) throws AppException {
+            return parse(news, NewsOverview.NEWS);
+        }
+
+        @Override
+        public NewsOverview getHompage() throws AppException {
+            return parse(homepage, NewsOverview.HOMEPAGE);
+        }
+
+        @Override
+        public Article executePreformedRequest(String verifiedSafeUrl) throws AppException {
+            return parse(article, Article.READER);
+        }
+
+        private static <T> T parse(byte[] body, ModelReader<T> reader) throws AppException {
+            try {
+                return RequestHandler.parseBody(new ByteArrayInputStream(body), reader);
+            }
+            catch(IOException e) {
+                throw new ApiRequestFailureException(e);
+            }
+        }
+
+        private static byte[] readFixture(String name) throws IOException {
+            try(InputStream resource = Warmup.class.getClassLoader().getResourceAsStream("fixtures/" + name + ".json")) {
+                if(resource != null) {
+                    return resource.readAllBytes();
+                }
+            }
+            return Files.readAllBytes(Paths.get(FIXTURE_DIR, name + ".json"));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Führt die Anfragen aus, je nach Einstellung "execution_mode":
+//   "thread"  - ein neuer Thread pro Verbindung (altes Verhalten, unbegrenzt)
+//   "pool"    - begrenzte Anzahl an Workern mit Warteschlange
+//   "virtual" - ein virtueller Thread pro Verbindung (ab Java 21, sonst "pool")
+// Ist der Pool voll, entscheidet "worker_overflow_policy" (reject, block, caller_runs). block und caller_runs halten
+// den Thread auf, der die Anfrage abgibt. Beim Transport "nio" ist das der einzige Selector-Thread, dort gilt immer reject.
+class WorkerPool {
+    private static final int GEMINI_SERVER_UNAVAILABLE = 41;
+
+    private final ExecutorService executor;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    // selectorThread: Aufträge kommen aus dem Selector-Thread von NioServer, der nie warten oder selbst ausführen darf
+    public WorkerPool(boolean selectorThread) {
+        String mode = Settings.getString("execution_mode", "pool");
+        int workers = Settings.getInt("worker_threads", 16);
+        int queueSize = Settings.getInt("worker_queue_size", 64);
+        String policy = Settings.getString("worker_overflow_policy", "reject"); // reject, block, caller_runs
+        if(selectorThread && !policy.equals("reject")) {
+            Program.log("worker_overflow_policy \"" + policy + "\" would stall the selector thread, using \"reject\" for transport nio");
+            policy = "reject";
+        }
+
+        ExecutorService chosen = null;
+        if(mode.equals("virtual")) {
+            chosen = newVirtualThreadExecutor();
+            if(chosen == null) {
+                Program.log("Virtual threads are not available on this JVM, falling back to a bounded pool");
+            }
+        }
+        else if(mode.equals("thread")) {
+            chosen = Executors.newCachedThreadPool();
+        }
+
+        if(chosen == null) {
+            ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(queueSize);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, queue, rejectionHandler(policy));
+            pool.allowCoreThreadTimeOut(true);
+            Metrics.registerGauge("worker_queue_depth", () -> queue.size());
+            Metrics.registerGauge("worker_pool_size", () -> pool.getPoolSize());
+            chosen = pool;
+        }
+
+        this.executor = chosen;
+        Metrics.registerGauge("worker_active", () -> activeWorkers.get());
+    }
+
+    public void submit(Runnable task) {
+        Metrics.increment("connections_accepted_total");
+        execute(task);
+    }
+
+    // Für einzelne Anfragen auf einer offenen Verbindung (gerahmtes Protokoll)
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            activeWorkers.incrementAndGet();
+            try {
+                task.run();
+            }
+            finally {
+                activeWorkers.decrementAndGet();
+                Metrics.increment("worker_completed_total");
+            }
+        });
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(String policy) {
+        if(policy.equals("caller_runs")) { // Der Accept-Thread führt die Anfrage selbst aus und nimmt so lange keine neuen an
+            return (task, pool) -> {
+                Metrics.increment("worker_rejected_total");
+                if(!pool.isShutdown()) task.run();
+            };
+        }
+        else if(policy.equals("block")) { // Der Accept-Thread wartet, bis wieder Platz in der Warteschlange ist
+            return (task, pool) -> {
+                Metrics.increment("worker_rejected_total");
+                try {
+                    pool.getQueue().put(task);
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(e);
+                }
+            };
+        }
+        else { // Die Anfrage wird sofort mit "Server nicht verfügbar" beantwortet
+            return (task, pool) -> {
+                Metrics.increment("worker_rejected_total");
+                throw new RejectedExecutionException("Worker queue is full");
+            };
+        }
+    }
+
+    public static int getRejectionExitCode() {
+        return GEMINI_SERVER_UNAVAILABLE;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try { // Per Reflection, damit das Programm auch mit älteren Java-Versionen kompiliert
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        }
+        catch(ReflectiveOperationException _e) {
+            return null;
+        }
+    }
+}
\ No newline at end of file
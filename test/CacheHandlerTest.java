@@ -0,0 +1,41 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+// Veraltete Seiten mit "serve_stale": Ausgeliefert wird nur bis "max_stale_age" nach dem Ablauf, auch wenn die Seite
+// für bedingte Anfragen länger im Cache bleibt.
+class CacheHandlerTest {
+    public static void main(String[] args) throws Exception {
+        Path settings = Files.createTempFile("cache-handler-test", ".json");
+        Files.write(settings, "{ \"serve_stale\": true, \"max_stale_age\": 600, \"homepage_cache_duration\": 300 }".getBytes(StandardCharsets.UTF_8));
+        Settings.load(settings.toString()); // Vor allen Klassen, die Settings in statischen Feldern lesen
+        Files.delete(settings);
+        CacheHandler.initialize();
+        long now = Instant.now().getEpochSecond();
+
+        // Vor einer Stunde generiert, also seit 55 Minuten abgelaufen
+        CacheHandler.cacheArticle("test-homepage-old", new CachedPage("old homepage", now - 3600, Validators.NONE, CachedPage.UNKNOWN_TTL));
+        String page = CacheHandler.retrieveOrGenerate("getHomepage", "test-homepage-old", previous -> generated("new homepage")).join();
+        check(page.equals("new homepage"), "a homepage 1 h old is generated again instead of served stale, got: " + page);
+
+        // Seit 100 Sekunden abgelaufen
+        CacheHandler.cacheArticle("test-homepage-stale", new CachedPage("stale homepage", now - 400, Validators.NONE, CachedPage.UNKNOWN_TTL));
+        page = CacheHandler.retrieveOrGenerate("getHomepage", "test-homepage-stale", previous -> generated("new homepage")).join();
+        check(page.equals("stale homepage"), "a homepage within max_stale_age is served stale, got: " + page);
+
+        System.out.println("CacheHandlerTest passed");
+        System.exit(0); // Die Threads der Metriken und des Caches nicht abwarten
+    }
+
+    private static CompletableFuture<GeneratedPage> generated(String contents) {
+        return CompletableFuture.completedFuture(new GeneratedPage(contents, Validators.NONE, -1));
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
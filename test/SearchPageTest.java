@@ -0,0 +1,34 @@
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Suchseite aus test/fixtures/search-video.json: ein Artikel, ein Video mit Stream und ein Video ohne Stream.
+// Jedes Ergebnis wird wie früher mit seinem details verlinkt, auch Videos.
+class SearchPageTest {
+    public static void main(String[] args) throws Exception {
+        SearchResult search = RequestHandler.parseBody(new ByteArrayInputStream(Files.readAllBytes(Paths.get(System.getProperty("test.fixtures", "test/fixtures"), "search-video.json"))), SearchResult.READER);
+        check(search.results.size() == 3, "all three results are parsed, got " + search.results.size());
+        check(search.results.get(1).isVideo() && search.results.get(2).isVideo(), "video results are marked as videos");
+
+        PageGenorator pg = new PageGenorator(new RequestHandler() {
+            @Override
+            public SearchResult getSearchResults(String query, int page) {
+                return search;
+            }
+        });
+        String page = pg.generateSearchPage("Klima", 0);
+
+        check(page.contains("=>gemini://127.0.0.1/do-request?https://www.tagesschau.de/api2/inland/klima-001.json [1] Klimaschutzgesetz beschlossen\n"), "story is linked with details:\n" + page);
+        check(page.contains("=>gemini://127.0.0.1/do-request?https://www.tagesschau.de/api2/multimedia/video/video-2.json [2] tagesschau 20:00 Uhr\n"), "video is linked with details:\n" + page);
+        check(page.contains("=>gemini://127.0.0.1/do-request?https://www.tagesschau.de/api2/multimedia/video/video-3.json [3] Klimagipfel: Pressekonferenz live\n"), "video without streams is linked with details:\n" + page);
+        check(!page.contains("?null"), "no result is linked to null:\n" + page);
+
+        System.out.println("SearchPageTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}